@@ -0,0 +1,134 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+
+/**
+ * The operations under benchmark, packaged as callables. JMH refuses benchmark classes in the
+ * default package and named packages cannot see SkillExchange, so the benchmark looks this
+ * class up reflectively once and then calls the returned lambdas directly.
+ */
+public class BenchmarkTargets {
+    private BenchmarkTargets() {
+    }
+
+    public static Map<String, Callable<Object>> create(int users, int skillsPerUser, int vocabulary,
+                                                       int chatsPerUser, int messagesPerChat) throws IOException {
+        Path dir = Files.createTempDirectory("skillexchange-bench");
+        // must be set before SkillExchange is initialised; the chat cache holds a few users'
+        // conversations, so viewChat stays warm while readChat, cycling through all of them, is cold
+        System.setProperty("skillexchange.dataDir", dir.toString());
+        System.setProperty("skillexchange.chat.cacheMessages", String.valueOf(10 * chatsPerUser * messagesPerChat));
+        SyntheticData data = new SyntheticData(users, skillsPerUser, vocabulary, chatsPerUser, messagesPerChat, 42);
+        data.populate();
+        SkillExchange.saveTextFiles();
+        SkillExchange.saveBinarySnapshot(0);
+        // start over from the files as the application does, which also opens the journal commits go to
+        SkillExchange.clearLoadedData();
+        if (!SkillExchange.openData()) {
+            throw new IOException("failed to open the synthetic data in " + dir);
+        }
+
+        // the menus under test always answer "0" (cancel) and print into the void
+        Session session = new Session(new Scanner(new RepeatingInput("0\n"), "UTF-8"),
+                new PrintStream(OutputStream.nullOutputStream()));
+        session.currentUser = SyntheticData.user(users / 2);
+        Session adder = new Session(new Scanner(new RepeatingInput("0\n"), "UTF-8"),
+                new PrintStream(OutputStream.nullOutputStream()));
+        List<String> chatKeys = data.chatKeys();
+
+        Map<String, Callable<Object>> targets = new LinkedHashMap<>();
+        targets.put("findMatches", () -> {
+            SkillExchange.findMatches(session);
+            return null;
+        });
+        targets.put("viewChat", () -> {
+            SkillExchange.viewChat(session);
+            return null;
+        });
+        targets.put("hashPassword", () -> PasswordHasher.SHA256.hash(SyntheticData.PASSWORD));
+        targets.put("hashPasswordSalted", () -> PasswordHasher.PBKDF2.hash(SyntheticData.PASSWORD));
+        // the menu's checks, journal commit and compactions for a user who has no skills yet, so
+        // the skill is always really added
+        int[] fresh = {0};
+        targets.put("addSkill", () -> {
+            adder.currentUser = "fresh" + fresh[0]++;
+            return SkillExchange.addSkill(adder, "teach", data.skill());
+        });
+        int[] next = {0};
+        targets.put("readChat", () -> SkillExchange.chatPage(chatKeys.get(next[0]++ % chatKeys.size()), 0));
+        // run before each load* target so it fills empty maps instead of overwriting full ones
+        targets.put("clear", () -> {
+            SkillExchange.clearLoadedData();
+            return null;
+        });
+        targets.put("loadUserCredentials", () -> {
+            SkillExchange.loadUserCredentials();
+            return null;
+        });
+        targets.put("saveUserCredentials", SkillExchange::saveUserCredentials);
+        targets.put("loadSkillsOffered", () -> {
+            SkillExchange.loadSkillsOffered();
+            return null;
+        });
+        targets.put("saveSkillsOffered", SkillExchange::saveSkillsOffered);
+        targets.put("loadSkillsNeeded", () -> {
+            SkillExchange.loadSkillsNeeded();
+            return null;
+        });
+        targets.put("saveSkillsNeeded", SkillExchange::saveSkillsNeeded);
+        targets.put("loadEmails", () -> {
+            SkillExchange.loadEmails();
+            return null;
+        });
+        targets.put("saveEmails", SkillExchange::saveEmails);
+        targets.put("loadPhones", () -> {
+            SkillExchange.loadPhones();
+            return null;
+        });
+        targets.put("savePhones", SkillExchange::savePhones);
+        targets.put("loadNotifications", () -> {
+            SkillExchange.loadNotifications();
+            return null;
+        });
+        targets.put("saveNotifications", SkillExchange::saveNotifications);
+        targets.put("saveChatMessages", SkillExchange::saveChatMessages);
+        targets.put("loadBinarySnapshot", SkillExchange::loadBinarySnapshot);
+        targets.put("saveBinarySnapshot", () -> {
+            SkillExchange.markAllDirty();
+            SkillExchange.saveBinarySnapshot(0);
+            return null;
+        });
+        return targets;
+    }
+
+    /** Endless input that repeats the same answer for every prompt. */
+    private static final class RepeatingInput extends InputStream {
+        private final byte[] answer;
+        private int pos;
+
+        RepeatingInput(String answer) {
+            this.answer = answer.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int read() {
+            int b = answer[pos];
+            pos = (pos + 1) % answer.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) {
+                b[off + i] = (byte) read();
+            }
+            return len;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Populates SkillExchange with a reproducible synthetic community by feeding it the same
+ * journal records that registrations, skill additions and chats produce.
+ */
+class SyntheticData {
+    static final String PASSWORD = "Passw0rd!";
+
+    private final int users;
+    private final int skillsPerUser;
+    private final int vocabulary;
+    private final int chatsPerUser;
+    private final int messagesPerChat;
+    private final Random random;
+    private final Set<String> chatKeys = new LinkedHashSet<>();
+    private long seq;
+
+    SyntheticData(int users, int skillsPerUser, int vocabulary, int chatsPerUser, int messagesPerChat, long seed) {
+        this.users = users;
+        this.skillsPerUser = skillsPerUser;
+        this.vocabulary = vocabulary;
+        this.chatsPerUser = chatsPerUser;
+        this.messagesPerChat = messagesPerChat;
+        this.random = new Random(seed);
+    }
+
+    static String user(int i) {
+        return "user" + i;
+    }
+
+    List<String> chatKeys() {
+        return new ArrayList<>(chatKeys);
+    }
+
+    String skill() {
+        return "skill" + random.nextInt(vocabulary);
+    }
+
+    void populate() {
+        String hash = PasswordHasher.SHA256.hash(PASSWORD);
+        for (int i = 0; i < users; i++) {
+            apply(Journal.Type.USER_REGISTERED, user(i), hash, user(i) + "@gmail.com", String.format("%010d", i));
+        }
+        for (int i = 0; i < users; i++) {
+            for (int j = 0; j < skillsPerUser; j++) {
+                apply(Journal.Type.SKILL_ADDED, user(i), "teach", skill());
+                apply(Journal.Type.SKILL_ADDED, user(i), "learn", skill());
+            }
+        }
+        for (int i = 0; i < users; i++) {
+            for (int c = 0; c < chatsPerUser; c++) {
+                int other = random.nextInt(users);
+                if (other == i) continue;
+                String a = user(i);
+                String b = user(other);
+                String chatKey = a.compareTo(b) < 0 ? a + "_" + b : b + "_" + a;
+                apply(Journal.Type.CONNECTION_ADDED, a, b);
+                apply(Journal.Type.CONVERSATION_OPENED, chatKey);
+                chatKeys.add(chatKey);
+                for (int m = 0; m < messagesPerChat; m++) {
+                    String from = (m & 1) == 0 ? a : b;
+                    apply(Journal.Type.CHAT_APPENDED, chatKey, String.valueOf(m), from + ":message " + m + " about " + skill());
+                }
+            }
+        }
+    }
+
+    private void apply(Journal.Type type, String... fields) {
+        SkillExchange.apply(new Journal.Record(++seq, type, fields));
+    }
+}
@@ -0,0 +1,230 @@
+package skillexchange.bench;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Hot paths of SkillExchange against a synthetic community of {@code users} users, each with
+ * {@code skillsPerUser} skills to teach and to learn and {@code chatsPerUser} conversations of
+ * {@code messagesPerChat} messages. Each parameter combination runs in its own fork, so the
+ * static maps are populated exactly once per trial. The load benchmarks each time a single load
+ * into maps that {@link Cleared} empties before every iteration.
+ *
+ * Run with: java -jar benchmarks/target/benchmarks.jar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SkillExchangeBenchmark {
+    @Param({"1000", "10000"})
+    public int users;
+
+    @Param({"5"})
+    public int skillsPerUser;
+
+    @Param({"500"})
+    public int vocabulary;
+
+    @Param({"3"})
+    public int chatsPerUser;
+
+    @Param({"20"})
+    public int messagesPerChat;
+
+    private Callable<Object> findMatches;
+    private Callable<Object> viewChat;
+    private Callable<Object> hashPassword;
+    private Callable<Object> hashPasswordSalted;
+    private Callable<Object> addSkill;
+    private Callable<Object> loadUserCredentials;
+    private Callable<Object> saveUserCredentials;
+    private Callable<Object> loadSkillsOffered;
+    private Callable<Object> saveSkillsOffered;
+    private Callable<Object> loadSkillsNeeded;
+    private Callable<Object> saveSkillsNeeded;
+    private Callable<Object> loadEmails;
+    private Callable<Object> saveEmails;
+    private Callable<Object> loadPhones;
+    private Callable<Object> savePhones;
+    private Callable<Object> loadNotifications;
+    private Callable<Object> saveNotifications;
+    private Callable<Object> readChat;
+    private Callable<Object> saveChatMessages;
+    private Callable<Object> loadBinarySnapshot;
+    private Callable<Object> saveBinarySnapshot;
+    private Callable<Object> clear;
+
+    /**
+     * Empties the loaded maps before every iteration, so a load fills them from nothing as at
+     * startup. Load benchmarks run one call per iteration to match.
+     */
+    @State(Scope.Thread)
+    public static class Cleared {
+        @Setup(Level.Iteration)
+        public void clear(SkillExchangeBenchmark benchmark) throws Exception {
+            benchmark.clear.call();
+        }
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Map<String, Callable<Object>> targets = (Map<String, Callable<Object>>) Class.forName("BenchmarkTargets")
+                .getMethod("create", int.class, int.class, int.class, int.class, int.class)
+                .invoke(null, users, skillsPerUser, vocabulary, chatsPerUser, messagesPerChat);
+        findMatches = targets.get("findMatches");
+        viewChat = targets.get("viewChat");
+        hashPassword = targets.get("hashPassword");
+        hashPasswordSalted = targets.get("hashPasswordSalted");
+        addSkill = targets.get("addSkill");
+        loadUserCredentials = targets.get("loadUserCredentials");
+        saveUserCredentials = targets.get("saveUserCredentials");
+        loadSkillsOffered = targets.get("loadSkillsOffered");
+        saveSkillsOffered = targets.get("saveSkillsOffered");
+        loadSkillsNeeded = targets.get("loadSkillsNeeded");
+        saveSkillsNeeded = targets.get("saveSkillsNeeded");
+        loadEmails = targets.get("loadEmails");
+        saveEmails = targets.get("saveEmails");
+        loadPhones = targets.get("loadPhones");
+        savePhones = targets.get("savePhones");
+        loadNotifications = targets.get("loadNotifications");
+        saveNotifications = targets.get("saveNotifications");
+        readChat = targets.get("readChat");
+        saveChatMessages = targets.get("saveChatMessages");
+        loadBinarySnapshot = targets.get("loadBinarySnapshot");
+        saveBinarySnapshot = targets.get("saveBinarySnapshot");
+        clear = targets.get("clear");
+    }
+
+    @Benchmark
+    public Object findMatches() throws Exception {
+        return findMatches.call();
+    }
+
+    @Benchmark
+    public Object viewChat() throws Exception {
+        return viewChat.call();
+    }
+
+    @Benchmark
+    public Object hashPassword() throws Exception {
+        return hashPassword.call();
+    }
+
+    @Benchmark
+    public Object hashPasswordSalted() throws Exception {
+        return hashPasswordSalted.call();
+    }
+
+    @Benchmark
+    public Object addSkill() throws Exception {
+        return addSkill.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadUserCredentials(Cleared cleared) throws Exception {
+        return loadUserCredentials.call();
+    }
+
+    @Benchmark
+    public Object saveUserCredentials() throws Exception {
+        return saveUserCredentials.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadSkillsOffered(Cleared cleared) throws Exception {
+        return loadSkillsOffered.call();
+    }
+
+    @Benchmark
+    public Object saveSkillsOffered() throws Exception {
+        return saveSkillsOffered.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadSkillsNeeded(Cleared cleared) throws Exception {
+        return loadSkillsNeeded.call();
+    }
+
+    @Benchmark
+    public Object saveSkillsNeeded() throws Exception {
+        return saveSkillsNeeded.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadEmails(Cleared cleared) throws Exception {
+        return loadEmails.call();
+    }
+
+    @Benchmark
+    public Object saveEmails() throws Exception {
+        return saveEmails.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadPhones(Cleared cleared) throws Exception {
+        return loadPhones.call();
+    }
+
+    @Benchmark
+    public Object savePhones() throws Exception {
+        return savePhones.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadNotifications(Cleared cleared) throws Exception {
+        return loadNotifications.call();
+    }
+
+    @Benchmark
+    public Object saveNotifications() throws Exception {
+        return saveNotifications.call();
+    }
+
+    @Benchmark
+    public Object readChat() throws Exception {
+        return readChat.call();
+    }
+
+    @Benchmark
+    public Object saveChatMessages() throws Exception {
+        return saveChatMessages.call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 20, batchSize = 1)
+    public Object loadBinarySnapshot(Cleared cleared) throws Exception {
+        return loadBinarySnapshot.call();
+    }
+
+    @Benchmark
+    public Object saveBinarySnapshot() throws Exception {
+        return saveBinarySnapshot.call();
+    }
+}
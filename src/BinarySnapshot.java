@@ -0,0 +1,267 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Versioned binary snapshot of all user data.
+ *
+ * Layout: header (magic, version, journal sequence, section table), then a string table of
+ * length-prefixed UTF-8 strings, then one section per map. Sections refer to strings by their
+ * index in the table, so a skill or username shared by many entries is stored once. The file is
+ * memory-mapped on load and the sections are decoded in parallel.
+ *
+ * Version 2 stores notifications as typed records and version 3 adds match subscriptions; older
+ * versions are still read.
+ */
+class BinarySnapshot {
+    static final class Data {
+        long seq;
+        final Map<String, String> userCredentials = new HashMap<>();
+        final Map<String, List<String>> skillsOffered = new HashMap<>();
+        final Map<String, List<String>> skillsNeeded = new HashMap<>();
+        final Map<String, String> userEmails = new HashMap<>();
+        final Map<String, String> userPhones = new HashMap<>();
+        final Map<String, List<Notification>> notifications = new HashMap<>();
+        final Map<String, List<String>> chatMessages = new HashMap<>();
+        final Map<String, List<String>> matchSubscriptions = new HashMap<>();
+    }
+
+    private static final int MAGIC = 0x53585331; // "SXS1"
+    private static final short VERSION = 3;
+    private static final int SECTIONS = 8;
+    private static final int MIN_HEADER_SIZE = 4 + 2 + 8 + 7 * 4;
+
+    private BinarySnapshot() {
+    }
+
+    static void write(Path path, Data data) throws IOException {
+        StringTable strings = new StringTable();
+        byte[][] sections = {
+                encodeStrings(data.userCredentials, strings),
+                encodeLists(data.skillsOffered, strings),
+                encodeLists(data.skillsNeeded, strings),
+                encodeStrings(data.userEmails, strings),
+                encodeStrings(data.userPhones, strings),
+                encodeNotifications(data.notifications, strings),
+                encodeLists(data.chatMessages, strings),
+                encodeLists(data.matchSubscriptions, strings)
+        };
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(data.seq);
+            for (byte[] section : sections) {
+                out.writeInt(section.length);
+            }
+            out.writeInt(strings.size());
+            for (String value : strings.values) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            for (byte[] section : sections) {
+                out.write(section);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Data read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < MIN_HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            short version = buffer.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            Data data = new Data();
+            data.seq = buffer.getLong();
+            int sectionCount = version < 3 ? 7 : SECTIONS;
+            int[] sectionLengths = new int[SECTIONS];
+            for (int i = 0; i < sectionCount; i++) {
+                sectionLengths[i] = buffer.getInt();
+            }
+            String[] strings = readStrings(buffer);
+
+            // Sections a version predates are left empty
+            ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+            for (int i = 0; i < SECTIONS; i++) {
+                ByteBuffer section = buffer.slice();
+                section.limit(sectionLengths[i]);
+                sections[i] = section;
+                buffer.position(buffer.position() + sectionLengths[i]);
+            }
+            CompletableFuture.allOf(
+                    CompletableFuture.runAsync(() -> decodeStrings(sections[0], strings, data.userCredentials)),
+                    CompletableFuture.runAsync(() -> decodeLists(sections[1], strings, data.skillsOffered)),
+                    CompletableFuture.runAsync(() -> decodeLists(sections[2], strings, data.skillsNeeded)),
+                    CompletableFuture.runAsync(() -> decodeStrings(sections[3], strings, data.userEmails)),
+                    CompletableFuture.runAsync(() -> decodeStrings(sections[4], strings, data.userPhones)),
+                    CompletableFuture.runAsync(() -> {
+                        if (version == 1) {
+                            decodeLegacyNotifications(sections[5], strings, data.notifications);
+                        } else {
+                            decodeNotifications(sections[5], strings, data.notifications);
+                        }
+                    }),
+                    CompletableFuture.runAsync(() -> decodeLists(sections[6], strings, data.chatMessages)),
+                    CompletableFuture.runAsync(() -> {
+                        if (sectionLengths[7] > 0) {
+                            decodeLists(sections[7], strings, data.matchSubscriptions);
+                        }
+                    })
+            ).join();
+            return data;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt snapshot file: " + path, e);
+        }
+    }
+
+    // Offsets are found in one sequential pass; decoding the UTF-8 itself is spread across cores
+    private static String[] readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = buffer.getInt();
+            offsets[i] = buffer.position();
+            buffer.position(offsets[i] + lengths[i]);
+        }
+        String[] strings = new String[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            byte[] utf8 = new byte[lengths[i]];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offsets[i]);
+            view.get(utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+        });
+        return strings;
+    }
+
+    private static byte[] encodeStrings(Map<String, String> map, StringTable strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            out.writeInt(strings.id(entry.getKey()));
+            out.writeInt(strings.id(entry.getValue()));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeLists(Map<String, List<String>> map, StringTable strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(map.size());
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            out.writeInt(strings.id(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                out.writeInt(strings.id(value));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeNotifications(Map<String, List<Notification>> map, StringTable strings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(map.size());
+        for (Map.Entry<String, List<Notification>> entry : map.entrySet()) {
+            out.writeInt(strings.id(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (Notification notification : entry.getValue()) {
+                out.writeLong(notification.id);
+                out.writeByte(notification.kind.ordinal());
+                out.writeInt(strings.id(notification.from));
+                out.writeLong(notification.timestamp);
+                out.writeInt(strings.id(notification.detail));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void decodeNotifications(ByteBuffer section, String[] strings, Map<String, List<Notification>> target) {
+        Notification.Kind[] kinds = Notification.Kind.values();
+        int count = section.getInt();
+        for (int i = 0; i < count; i++) {
+            String to = strings[section.getInt()];
+            int size = section.getInt();
+            List<Notification> inbox = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                long id = section.getLong();
+                Notification.Kind kind = kinds[section.get()];
+                String from = strings[section.getInt()];
+                long timestamp = section.getLong();
+                inbox.add(new Notification(id, kind, from, to, timestamp, strings[section.getInt()]));
+            }
+            target.put(to, inbox);
+        }
+    }
+
+    // Version 1 kept the rendered text; IDs are assigned in file order
+    private static void decodeLegacyNotifications(ByteBuffer section, String[] strings, Map<String, List<Notification>> target) {
+        Map<String, List<String>> texts = new HashMap<>();
+        decodeLists(section, strings, texts);
+        long id = 1;
+        for (Map.Entry<String, List<String>> entry : texts.entrySet()) {
+            List<Notification> inbox = new ArrayList<>(entry.getValue().size());
+            for (String text : entry.getValue()) {
+                inbox.add(Notification.fromLegacy(id++, entry.getKey(), text));
+            }
+            target.put(entry.getKey(), inbox);
+        }
+    }
+
+    private static void decodeStrings(ByteBuffer section, String[] strings, Map<String, String> target) {
+        int count = section.getInt();
+        for (int i = 0; i < count; i++) {
+            target.put(strings[section.getInt()], strings[section.getInt()]);
+        }
+    }
+
+    private static void decodeLists(ByteBuffer section, String[] strings, Map<String, List<String>> target) {
+        int count = section.getInt();
+        for (int i = 0; i < count; i++) {
+            String key = strings[section.getInt()];
+            int size = section.getInt();
+            List<String> values = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                values.add(strings[section.getInt()]);
+            }
+            target.put(key, values);
+        }
+    }
+
+    private static final class StringTable {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
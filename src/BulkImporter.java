@@ -0,0 +1,328 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Headless import of users, contacts and skills from CSV or JSON lines. The file is streamed in
+ * fixed-size batches: each batch is validated, its passwords are hashed in parallel on a fork-join
+ * pool, and the resulting records are applied straight to the in-memory maps. Nothing is written
+ * per record; the caller persists everything once at the end.
+ *
+ * CSV needs a header naming the columns username, password, email, phone, teach and learn.
+ * Skill lists are separated by ';'. A JSON line holds the same keys, with teach and learn as
+ * arrays of strings.
+ */
+class BulkImporter {
+    static final class Result {
+        int imported;
+        int rejected;
+    }
+
+    private static final class Row {
+        final int line;
+        final Map<String, Object> values;
+        String hash;
+
+        Row(int line, Map<String, Object> values) {
+            this.line = line;
+            this.values = values;
+        }
+
+        String get(String key) {
+            Object value = values.get(key);
+            return value == null ? "" : value.toString().trim();
+        }
+
+        List<String> skills(String key) {
+            Object value = values.get(key);
+            List<String> raw = value instanceof List ? castList(value)
+                    : value == null ? Collections.<String>emptyList() : Arrays.asList(value.toString().split(";"));
+            List<String> skills = new ArrayList<>(raw.size());
+            for (String skill : raw) {
+                String name = SkillDictionary.normalize(skill);
+                if (!name.isEmpty() && !skills.contains(name)) {
+                    skills.add(name);
+                }
+            }
+            return skills;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<String> castList(Object value) {
+            return (List<String>) value;
+        }
+    }
+
+    private static final int BATCH = Integer.getInteger("skillexchange.import.batch", 1024);
+    private static final int MAX_REPORTED = 20;
+
+    private final Predicate<String> existingUser;
+    private final Consumer<Journal.Record> apply;
+    private final PrintStream out;
+    private final Set<String> seen = new HashSet<>();
+    private final Result result = new Result();
+
+    BulkImporter(Predicate<String> existingUser, Consumer<Journal.Record> apply, PrintStream out) {
+        this.existingUser = existingUser;
+        this.apply = apply;
+        this.out = out;
+    }
+
+    Result importFile(Path file) throws IOException {
+        boolean json = file.getFileName().toString().toLowerCase().matches(".*\\.(jsonl|ndjson|json)");
+        ForkJoinPool hashers = new ForkJoinPool(Integer.getInteger("skillexchange.import.threads",
+                Runtime.getRuntime().availableProcessors()));
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> header = null;
+            List<Row> batch = new ArrayList<>(BATCH);
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Map<String, Object> values;
+                try {
+                    if (json) {
+                        values = new JsonLine(line).parseObject();
+                    } else if (header == null) {
+                        header = parseCsv(line);
+                        continue;
+                    } else {
+                        values = new HashMap<>();
+                        List<String> fields = parseCsv(line);
+                        for (int i = 0; i < header.size() && i < fields.size(); i++) {
+                            values.put(header.get(i).trim().toLowerCase(), fields.get(i));
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    reject(number, "malformed line (" + e.getMessage() + ")");
+                    continue;
+                }
+                Row row = new Row(number, values);
+                if (validate(row)) {
+                    batch.add(row);
+                }
+                if (batch.size() == BATCH) {
+                    flushBatch(batch, hashers);
+                }
+            }
+            flushBatch(batch, hashers);
+        } finally {
+            hashers.shutdown();
+        }
+        return result;
+    }
+
+    private boolean validate(Row row) {
+        String username = row.get("username");
+        if (username.isEmpty()) {
+            return reject(row.line, "missing username");
+        }
+        if (existingUser.test(username) || !seen.add(username)) {
+            return reject(row.line, "username " + username + " already exists");
+        }
+        if (!SkillExchange.isPasswordValid(row.get("password"))) {
+            return reject(row.line, "password must be at least 8 characters with an uppercase letter and a special character");
+        }
+        if (!SkillExchange.isEmailValid(row.get("email"))) {
+            return reject(row.line, "email must end with @gmail.com");
+        }
+        if (!SkillExchange.isPhoneValid(row.get("phone"))) {
+            return reject(row.line, "phone must be exactly 10 digits");
+        }
+        return true;
+    }
+
+    private boolean reject(int line, String reason) {
+        if (result.rejected++ < MAX_REPORTED) {
+            out.println("⚠️ Line " + line + " skipped: " + reason + ".");
+        }
+        return false;
+    }
+
+    private void flushBatch(List<Row> batch, ForkJoinPool hashers) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        PasswordHasher hasher = PasswordHasher.forNewPasswords();
+        try {
+            hashers.submit(() -> batch.parallelStream().forEach(row -> row.hash = hasher.hash(row.get("password")))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing passwords");
+        } catch (ExecutionException e) {
+            throw new IOException("Password hashing failed", e.getCause());
+        }
+        for (Row row : batch) {
+            String username = row.get("username");
+            apply.accept(record(Journal.Type.USER_REGISTERED, username, row.hash, row.get("email"), row.get("phone")));
+            List<String> teach = row.skills("teach");
+            for (String skill : teach) {
+                apply.accept(record(Journal.Type.SKILL_ADDED, username, "teach", skill));
+            }
+            // Same rule as the menu: a skill cannot be both offered and needed
+            for (String skill : row.skills("learn").stream().filter(s -> !teach.contains(s)).collect(Collectors.toList())) {
+                apply.accept(record(Journal.Type.SKILL_ADDED, username, "learn", skill));
+            }
+            result.imported++;
+        }
+        batch.clear();
+    }
+
+    private static Journal.Record record(Journal.Type type, String... fields) {
+        return new Journal.Record(0, type, fields);
+    }
+
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /** Just enough JSON for one flat object per line: string, number and literal values, and arrays of them. */
+    private static final class JsonLine {
+        private final String text;
+        private int pos;
+
+        JsonLine(String text) {
+            this.text = text;
+        }
+
+        Map<String, Object> parseObject() {
+            Map<String, Object> values = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                pos++;
+                return values;
+            }
+            do {
+                String key = parseString();
+                expect(':');
+                values.put(key.toLowerCase(), peek() == '[' ? parseArray() : parseScalar());
+            } while (consume(','));
+            expect('}');
+            return values;
+        }
+
+        private List<String> parseArray() {
+            List<String> items = new ArrayList<>();
+            expect('[');
+            if (peek() == ']') {
+                pos++;
+                return items;
+            }
+            do {
+                items.add(parseScalar());
+            } while (consume(','));
+            expect(']');
+            return items;
+        }
+
+        private String parseScalar() {
+            if (peek() == '"') {
+                return parseString();
+            }
+            int start = pos;
+            while (pos < text.length() && ",]} \t".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException("expected a value at column " + (pos + 1));
+            }
+            return text.substring(start, pos);
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 't': value.append('\t'); break;
+                    case 'r': value.append('\r'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("bad unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("unterminated string");
+        }
+
+        private char peek() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("unexpected end of line");
+            }
+            return text.charAt(pos);
+        }
+
+        private boolean consume(char c) {
+            if (pos < text.length() && peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("expected '" + c + "' at column " + (pos + 1));
+            }
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.*;
+import java.net.URLEncoder;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index of the words in chat messages, one per conversation: each word maps to the
+ * ascending positions of the messages containing it. A search only consults the conversations
+ * of the user asking and intersects the posting lists of its words, so its cost follows the
+ * number of matches rather than the length of the history.
+ *
+ * Every appended message is indexed as it arrives, and {@link #flush()} saves the indexes that
+ * changed to a .search file beside the conversation's .chat and .archive files. Indexes live in
+ * an LRU bounded by conversation count; one that is not in memory is read back from its file,
+ * and only the messages appended after it was saved are split into words. Indexes with unsaved
+ * postings are pinned until the next flush, as chats are in {@link ChatStore}.
+ */
+class ChatSearchIndex {
+    static final class Hit {
+        final String chatKey;
+        final int position;
+        final String message;
+
+        Hit(String chatKey, int position, String message) {
+            this.chatKey = chatKey;
+            this.position = position;
+            this.message = message;
+        }
+    }
+
+    private static final class Postings {
+        int[] positions = new int[4];
+        int size;
+
+        void add(int position) {
+            // A word repeated within a message is recorded once
+            if (size > 0 && positions[size - 1] == position) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+    }
+
+    private static final class ConversationIndex {
+        final Map<String, Postings> words = new HashMap<>();
+        int indexed;
+    }
+
+    private static final String SUFFIX = ".search";
+
+    private final ChatStore chats;
+    private final Path dir;
+    private final int maxConversations;
+    private final LinkedHashMap<String, ConversationIndex> indexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, ConversationIndex> dirty = new ConcurrentHashMap<>();
+
+    ChatSearchIndex(ChatStore chats, Path dir, int maxConversations) {
+        this.chats = chats;
+        this.dir = dir;
+        this.maxConversations = maxConversations;
+    }
+
+    /** Splits text into lower-case words of letters and digits. */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /** Indexes messages appended since the last call. */
+    void appended(String chatKey) {
+        index(chatKey);
+    }
+
+    /** Drops a conversation's index, in memory and on disk, after its messages were replaced. */
+    void discard(String chatKey) throws IOException {
+        synchronized (this) {
+            indexes.remove(chatKey);
+            dirty.remove(chatKey);
+        }
+        Files.deleteIfExists(file(chatKey));
+    }
+
+    /** Saves every index with postings added since the last flush; call after the chats are flushed. */
+    void flush() throws IOException {
+        boolean written = false;
+        for (Map.Entry<String, ConversationIndex> entry : dirty.entrySet()) {
+            ConversationIndex index = entry.getValue();
+            synchronized (index) {
+                write(entry.getKey(), index);
+                dirty.remove(entry.getKey(), index);
+            }
+            written = true;
+        }
+        if (written) {
+            ChatStore.syncDirectory(dir);
+        }
+    }
+
+    /**
+     * Returns the messages in {@code chatKeys} that contain every word of {@code query}: at most
+     * {@code limit} per conversation, newest first, grouped in the order the keys are given.
+     */
+    List<Hit> search(Collection<String> chatKeys, String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<Hit> hits = new ArrayList<>();
+        for (String chatKey : chatKeys) {
+            ConversationIndex index = index(chatKey);
+            int[] positions;
+            synchronized (index) {
+                positions = match(index, terms);
+            }
+            // Only the matches shown are read back from the chat store
+            for (int i = positions.length - 1; i >= Math.max(0, positions.length - limit); i--) {
+                List<String> message = chats.range(chatKey, positions[i], positions[i] + 1);
+                if (!message.isEmpty()) {
+                    hits.add(new Hit(chatKey, positions[i], message.get(0)));
+                }
+            }
+        }
+        Metrics.count("chat.search.hits", hits.size());
+        return hits;
+    }
+
+    // Intersects the posting lists, shortest first, so the work is bounded by the rarest word
+    private static int[] match(ConversationIndex index, List<String> terms) {
+        List<Postings> lists = new ArrayList<>(terms.size());
+        for (String term : new LinkedHashSet<>(terms)) {
+            Postings postings = index.words.get(term);
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        int[] result = Arrays.copyOf(lists.get(0).positions, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            Postings other = lists.get(i);
+            int n = 0;
+            for (int position : result) {
+                if (Arrays.binarySearch(other.positions, 0, other.size, position) >= 0) {
+                    result[n++] = position;
+                }
+            }
+            result = Arrays.copyOf(result, n);
+        }
+        return result;
+    }
+
+    private ConversationIndex index(String chatKey) {
+        ConversationIndex index = cached(chatKey);
+        if (index == null) {
+            // Read outside the lock; if another caller got there first its copy is kept
+            ConversationIndex loaded = read(chatKey);
+            synchronized (this) {
+                index = dirty.get(chatKey);
+                if (index == null) {
+                    index = indexes.get(chatKey);
+                }
+                if (index == null) {
+                    index = loaded;
+                    indexes.put(chatKey, index);
+                    evict();
+                }
+            }
+        }
+        catchUp(chatKey, index);
+        return index;
+    }
+
+    private ConversationIndex cached(String chatKey) {
+        ConversationIndex index = dirty.get(chatKey);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            return indexes.get(chatKey);
+        }
+    }
+
+    // Unsaved indexes stay reachable through the dirty map, so eviction never loses postings
+    private void evict() {
+        Iterator<ConversationIndex> eldest = indexes.values().iterator();
+        while (indexes.size() > maxConversations && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void catchUp(String chatKey, ConversationIndex index) {
+        synchronized (index) {
+            int size = chats.size(chatKey);
+            if (size <= index.indexed) {
+                return;
+            }
+            dirty.put(chatKey, index);
+            List<String> messages = chats.range(chatKey, index.indexed, size);
+            for (String message : messages) {
+                int position = index.indexed++;
+                // Messages are "sender:text"; only the text is searched
+                int colon = message.indexOf(':');
+                for (String word : tokenize(colon < 0 ? message : message.substring(colon + 1))) {
+                    index.words.computeIfAbsent(word, k -> new Postings()).add(position);
+                }
+            }
+            Metrics.count("chat.search.indexed", messages.size());
+        }
+    }
+
+    // Layout: messages indexed, word count, then per word its text, posting count and positions.
+    // A file that cannot be read, or that covers more messages than the conversation now holds,
+    // is ignored and the index rebuilt from the messages.
+    private ConversationIndex read(String chatKey) {
+        ConversationIndex index = new ConversationIndex();
+        Path file = file(chatKey);
+        if (!Files.exists(file)) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            int indexed = in.readInt();
+            int words = in.readInt();
+            for (int i = 0; i < words; i++) {
+                String word = in.readUTF();
+                Postings postings = new Postings();
+                postings.size = in.readInt();
+                postings.positions = new int[Math.max(4, postings.size)];
+                for (int j = 0; j < postings.size; j++) {
+                    postings.positions[j] = in.readInt();
+                }
+                index.words.put(word, postings);
+            }
+            if (indexed > chats.size(chatKey)) {
+                return new ConversationIndex();
+            }
+            index.indexed = indexed;
+            Metrics.bytesRead("chats.search", Files.size(file));
+            return index;
+        } catch (IOException e) {
+            return new ConversationIndex();
+        }
+    }
+
+    // Caller holds the index's lock
+    private void write(String chatKey, ConversationIndex index) throws IOException {
+        Path file = file(chatKey);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(dir);
+        try (FileOutputStream stream = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(index.indexed);
+            out.writeInt(index.words.size());
+            for (Map.Entry<String, Postings> entry : index.words.entrySet()) {
+                Postings postings = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(postings.size);
+                for (int i = 0; i < postings.size; i++) {
+                    out.writeInt(postings.positions[i]);
+                }
+            }
+            out.flush();
+            stream.getFD().sync();
+            Metrics.bytesWritten("chats.search", out.size());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path file(String chatKey) {
+        try {
+            return dir.resolve(URLEncoder.encode(chatKey, "UTF-8") + SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
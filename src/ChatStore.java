@@ -0,0 +1,587 @@
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Chat history stored one file per conversation and loaded on demand. Loaded conversations live in
+ * an LRU cache bounded by total message count. Conversations with messages not yet written to
+ * their file are pinned until {@link #flush()}; the journal covers them until then.
+ *
+ * Only the recent messages of a conversation are hot, kept as plain lines in its .chat file and in
+ * memory. Once enough older messages pile up, {@link #flush()} seals them into deflate-compressed
+ * blocks appended to a .archive file. Each block starts with a fixed header (message count, time
+ * sealed, raw and compressed length), which makes up the index of offsets read when the
+ * conversation is opened; scrolling back inflates only the block holding the requested page.
+ */
+class ChatStore {
+    private static final String SUFFIX = ".chat";
+    private static final String ARCHIVE_SUFFIX = ".archive";
+    // First line of a .chat file whose older messages are archived: the marker and their count
+    private static final char BASE_MARKER = '\u0000';
+    private static final int BLOCK_HEADER = 4 + 8 + 4 + 4;
+
+    private static final class Block {
+        final long offset;
+        final int first;
+        final int count;
+        final long sealedAt;
+        final int rawLength;
+        final int compressedLength;
+
+        Block(long offset, int first, int count, long sealedAt, int rawLength, int compressedLength) {
+            this.offset = offset;
+            this.first = first;
+            this.count = count;
+            this.sealedAt = sealedAt;
+            this.rawLength = rawLength;
+            this.compressedLength = compressedLength;
+        }
+    }
+
+    private static final class Conversation {
+        // Hot messages only; message i of the conversation is messages.get(i - archived)
+        final List<String> messages;
+        final List<Block> blocks;
+        int archived;
+        int persisted;
+        Block lastBlock;
+        List<String> lastBlockMessages;
+
+        Conversation(List<String> messages) {
+            this(messages, new ArrayList<>());
+        }
+
+        Conversation(List<String> messages, List<Block> blocks) {
+            this.messages = messages;
+            this.blocks = blocks;
+            this.persisted = messages.size();
+            for (Block block : blocks) {
+                archived += block.count;
+            }
+        }
+
+        int size() {
+            return archived + messages.size();
+        }
+    }
+
+    private final Path dir;
+    private final int maxCachedMessages;
+    private final int hotMessages;
+    private final int blockMessages;
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+    private final Map<String, Conversation> dirty = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Conversation> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedMessages;
+
+    ChatStore(Path dir, int maxCachedMessages, int hotMessages, int blockMessages) {
+        this.dir = dir;
+        this.maxCachedMessages = maxCachedMessages;
+        this.hotMessages = hotMessages;
+        this.blockMessages = Math.max(1, blockMessages);
+    }
+
+    /** Discovers the conversations on disk; their messages are only read when first opened. */
+    void load() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                keys.add(URLDecoder.decode(name.substring(0, name.length() - SUFFIX.length()), "UTF-8"));
+            }
+        }
+    }
+
+    Set<String> conversationKeys() {
+        return Collections.unmodifiableSet(keys);
+    }
+
+    boolean exists(String chatKey) {
+        return keys.contains(chatKey);
+    }
+
+    void open(String chatKey) {
+        if (keys.add(chatKey)) {
+            Conversation conversation = new Conversation(new ArrayList<>());
+            conversation.persisted = -1; // file not created yet
+            dirty.put(chatKey, conversation);
+            cache(chatKey, conversation);
+        }
+    }
+
+    int size(String chatKey) {
+        Conversation conversation = conversation(chatKey);
+        if (conversation == null) {
+            return 0;
+        }
+        synchronized (conversation) {
+            return conversation.size();
+        }
+    }
+
+    /**
+     * Returns up to {@code count} messages ending {@code skipFromEnd} messages before the newest,
+     * oldest first. {@code page(key, 0, 20)} is the latest twenty.
+     */
+    List<String> page(String chatKey, int skipFromEnd, int count) {
+        Conversation conversation = conversation(chatKey);
+        if (conversation == null) {
+            return Collections.emptyList();
+        }
+        synchronized (conversation) {
+            int end = Math.max(0, conversation.size() - skipFromEnd);
+            return range(chatKey, conversation, Math.max(0, end - count), end);
+        }
+    }
+
+    /** Returns messages {@code from} (inclusive) to {@code to} (exclusive), clamped to what exists. */
+    List<String> range(String chatKey, int from, int to) {
+        Conversation conversation = conversation(chatKey);
+        if (conversation == null) {
+            return Collections.emptyList();
+        }
+        synchronized (conversation) {
+            return range(chatKey, conversation, Math.max(0, from), Math.min(to, conversation.size()));
+        }
+    }
+
+    // Caller holds the conversation's lock
+    private List<String> range(String chatKey, Conversation conversation, int start, int end) {
+        List<String> page = new ArrayList<>(Math.max(0, end - start));
+        // The archived part comes only from the blocks it overlaps
+        for (int i = start; i < Math.min(end, conversation.archived); ) {
+            Block block = blockAt(conversation, i);
+            List<String> messages = inflate(chatKey, conversation, block);
+            int to = Math.min(end, block.first + block.count);
+            page.addAll(messages.subList(i - block.first, to - block.first));
+            i = to;
+        }
+        int hotStart = Math.max(start, conversation.archived) - conversation.archived;
+        int hotEnd = end - conversation.archived;
+        if (hotStart < hotEnd) {
+            page.addAll(conversation.messages.subList(hotStart, hotEnd));
+        }
+        return page;
+    }
+
+    /** Appends a message if the conversation currently holds exactly {@code position} messages. */
+    boolean append(String chatKey, int position, String message) {
+        Conversation loaded = conversation(chatKey);
+        if (loaded == null) {
+            open(chatKey);
+            loaded = conversation(chatKey);
+        }
+        // The copy loaded may have been evicted and read again by another caller since. Under the
+        // store's lock the message goes to the copy readers find, which is then pinned in the dirty
+        // map, so a later miss cannot load a second copy without it.
+        synchronized (this) {
+            Conversation conversation = cache(chatKey, loaded);
+            synchronized (conversation) {
+                if (conversation.size() != position) {
+                    return false;
+                }
+                conversation.messages.add(message);
+            }
+            dirty.put(chatKey, conversation);
+            if (cache.get(chatKey) == conversation) {
+                cachedMessages++;
+                evict();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends every unwritten message to its conversation file. The files, and the directory when
+     * one was created, are synced before returning, since the journal is dropped right after.
+     */
+    void flush() throws IOException {
+        Files.createDirectories(dir);
+        boolean created = false;
+        for (Map.Entry<String, Conversation> entry : dirty.entrySet()) {
+            Conversation conversation = entry.getValue();
+            List<String> pending;
+            int end;
+            synchronized (conversation) {
+                end = conversation.messages.size();
+                pending = new ArrayList<>(conversation.messages.subList(Math.max(0, conversation.persisted), end));
+            }
+            Path file = file(entry.getKey());
+            created |= !Files.exists(file);
+            ByteBuffer bytes = ByteBuffer.wrap(lines(pending));
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(true);
+            }
+            Metrics.bytesWritten("chats", bytes.limit());
+            synchronized (this) {
+                synchronized (conversation) {
+                    conversation.persisted = end;
+                    if (end == conversation.messages.size()) {
+                        dirty.remove(entry.getKey(), conversation);
+                    }
+                }
+            }
+            // Only conversations that grew can have new messages to archive
+            archive(entry.getKey(), conversation);
+        }
+        if (created) {
+            syncDirectory(dir);
+        }
+    }
+
+    /**
+     * Seals the oldest hot messages into compressed blocks once more than a block's worth exceed
+     * the hot limit. The blocks are appended and synced before the .chat file is replaced, and the
+     * new file records how many messages precede it, so a crash in between only leaves lines that
+     * the next read skips.
+     */
+    private void archive(String chatKey, Conversation conversation) throws IOException {
+        List<String> sealed;
+        List<String> remaining;
+        int first;
+        int base;
+        synchronized (conversation) {
+            int candidates = Math.min(conversation.persisted, conversation.messages.size() - hotMessages);
+            int count = candidates < 0 ? 0 : candidates / blockMessages * blockMessages;
+            if (count == 0) {
+                return;
+            }
+            sealed = new ArrayList<>(conversation.messages.subList(0, count));
+            remaining = new ArrayList<>(conversation.messages.subList(count, conversation.persisted));
+            first = conversation.archived;
+            base = first + count;
+        }
+        List<Block> blocks = appendBlocks(chatKey, first, sealed);
+        writeHot(chatKey, base, remaining);
+        synchronized (conversation) {
+            conversation.blocks.addAll(blocks);
+            conversation.archived = base;
+            conversation.messages.subList(0, sealed.size()).clear();
+            conversation.persisted -= sealed.size();
+        }
+        Metrics.count("chat.archived", sealed.size());
+        synchronized (this) {
+            if (cache.get(chatKey) == conversation) {
+                cachedMessages -= sealed.size();
+            }
+        }
+    }
+
+    /** Replaces a conversation wholesale, used when migrating from chats.txt or an older snapshot. */
+    void importConversation(String chatKey, List<String> messages) throws IOException {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(archiveFile(chatKey));
+        int count = Math.max(0, messages.size() - hotMessages) / blockMessages * blockMessages;
+        if (count > 0) {
+            appendBlocks(chatKey, 0, messages.subList(0, count));
+        }
+        writeHot(chatKey, count, messages.subList(count, messages.size()));
+        keys.add(chatKey);
+        dirty.remove(chatKey);
+        synchronized (this) {
+            Conversation cached = cache.remove(chatKey);
+            if (cached != null) {
+                cachedMessages -= cached.messages.size();
+            }
+        }
+    }
+
+    /** Deletes a conversation and its files, once its messages are safely stored under another key. */
+    void remove(String chatKey) throws IOException {
+        keys.remove(chatKey);
+        dirty.remove(chatKey);
+        synchronized (this) {
+            Conversation cached = cache.remove(chatKey);
+            if (cached != null) {
+                cachedMessages -= cached.messages.size();
+            }
+        }
+        Files.deleteIfExists(file(chatKey));
+        Files.deleteIfExists(archiveFile(chatKey));
+        syncDirectory(dir);
+    }
+
+    /** Visits every conversation without disturbing the cache. */
+    void forEach(BiConsumer<String, List<String>> action) throws IOException {
+        for (String chatKey : keys) {
+            Conversation conversation = cachedOrDirty(chatKey);
+            if (conversation == null) {
+                conversation = read(chatKey);
+            }
+            synchronized (conversation) {
+                List<String> messages = new ArrayList<>(conversation.size());
+                for (Block block : conversation.blocks) {
+                    messages.addAll(inflate(chatKey, conversation, block));
+                }
+                messages.addAll(conversation.messages);
+                action.accept(chatKey, messages);
+            }
+        }
+    }
+
+    private Conversation conversation(String chatKey) {
+        Conversation conversation = cachedOrDirty(chatKey);
+        if (conversation != null || !keys.contains(chatKey)) {
+            if (conversation != null) {
+                Metrics.count("chat.cache.hits", 1);
+            }
+            return conversation;
+        }
+        Metrics.count("chat.cache.misses", 1);
+        try {
+            return cache(chatKey, read(chatKey));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read conversation " + chatKey, e);
+        }
+    }
+
+    private Conversation cachedOrDirty(String chatKey) {
+        Conversation conversation = dirty.get(chatKey);
+        if (conversation != null) {
+            return conversation;
+        }
+        synchronized (this) {
+            return cache.get(chatKey);
+        }
+    }
+
+    synchronized long cachedMessages() {
+        return cachedMessages;
+    }
+
+    // A copy with unwritten messages is the live one even once it has left the cache
+    private synchronized Conversation cache(String chatKey, Conversation conversation) {
+        Conversation existing = dirty.get(chatKey);
+        if (existing == null) {
+            existing = cache.get(chatKey);
+        }
+        if (existing != null) {
+            return existing;
+        }
+        cache.put(chatKey, conversation);
+        cachedMessages += conversation.messages.size();
+        evict();
+        return conversation;
+    }
+
+    // Dirty conversations stay reachable through the dirty map, so eviction never loses messages
+    private void evict() {
+        Iterator<Conversation> eldest = cache.values().iterator();
+        while (cachedMessages > maxCachedMessages && cache.size() > 1 && eldest.hasNext()) {
+            cachedMessages -= eldest.next().messages.size();
+            eldest.remove();
+        }
+    }
+
+    // Reads the block index and the hot messages; archived messages stay compressed on disk
+    private Conversation read(String chatKey) throws IOException {
+        List<Block> blocks = readIndex(chatKey);
+        Path file = file(chatKey);
+        if (!Files.exists(file)) {
+            return new Conversation(new ArrayList<>(), blocks);
+        }
+        Metrics.bytesRead("chats", Files.size(file));
+        List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+        int base = 0;
+        if (!lines.isEmpty() && !lines.get(0).isEmpty() && lines.get(0).charAt(0) == BASE_MARKER) {
+            base = Integer.parseInt(lines.remove(0).substring(1));
+        }
+        Conversation conversation = new Conversation(lines, blocks);
+        // Blocks sealed just before a crash may still be in the old .chat file as well
+        if (conversation.archived > base) {
+            lines.subList(0, Math.min(lines.size(), conversation.archived - base)).clear();
+            conversation.persisted = lines.size();
+        }
+        return conversation;
+    }
+
+    private void writeHot(String chatKey, int base, List<String> messages) throws IOException {
+        Path file = file(chatKey);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<String> lines = new ArrayList<>(messages.size() + 1);
+        if (base > 0) {
+            lines.add(BASE_MARKER + String.valueOf(base));
+        }
+        lines.addAll(messages);
+        // The content is forced before the rename and the rename before returning, so a crash
+        // leaves the old file or the complete new one, never a renamed file missing its data
+        ByteBuffer bytes = ByteBuffer.wrap(lines(lines));
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(dir);
+        Metrics.bytesWritten("chats", bytes.limit());
+    }
+
+    private static byte[] lines(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append(System.lineSeparator());
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // A created or renamed file only survives a crash once its directory entry is synced as well.
+    // Windows cannot open a directory for this, and there the rename is as durable as it gets.
+    static void syncDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // not supported on this platform
+        }
+    }
+
+    private List<Block> appendBlocks(String chatKey, int first, List<String> messages) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (FileChannel channel = FileChannel.open(archiveFile(chatKey),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = channel.size();
+            long start = offset;
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < messages.size(); i += blockMessages) {
+                List<String> chunk = messages.subList(i, Math.min(messages.size(), i + blockMessages));
+                byte[] raw = String.join("\n", chunk).getBytes(StandardCharsets.UTF_8);
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER + compressed.size());
+                block.putInt(chunk.size()).putLong(now).putInt(raw.length).putInt(compressed.size());
+                block.put(compressed.toByteArray()).flip();
+                while (block.hasRemaining()) {
+                    channel.write(block, offset + block.position());
+                }
+                blocks.add(new Block(offset, first + i, chunk.size(), now, raw.length, compressed.size()));
+                offset += BLOCK_HEADER + compressed.size();
+            }
+            channel.force(true);
+            Metrics.bytesWritten("chats.archive", offset - start);
+        } finally {
+            deflater.end();
+        }
+        return blocks;
+    }
+
+    // Walks the block headers; a block torn by a crash is cut off, its messages are still hot
+    private List<Block> readIndex(String chatKey) throws IOException {
+        Path file = archiveFile(chatKey);
+        List<Block> blocks = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return blocks;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long offset = 0;
+            int first = 0;
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+            while (offset + BLOCK_HEADER <= size) {
+                header.clear();
+                while (header.hasRemaining() && channel.read(header, offset + header.position()) >= 0) {
+                    // keep reading
+                }
+                header.flip();
+                Block block = new Block(offset, first, header.getInt(), header.getLong(), header.getInt(), header.getInt());
+                if (offset + BLOCK_HEADER + block.compressedLength > size) {
+                    break;
+                }
+                blocks.add(block);
+                first += block.count;
+                offset += BLOCK_HEADER + block.compressedLength;
+            }
+            if (offset < size) {
+                channel.truncate(offset);
+            }
+            Metrics.bytesRead("chats.archive", (long) blocks.size() * BLOCK_HEADER);
+        }
+        return blocks;
+    }
+
+    private static Block blockAt(Conversation conversation, int message) {
+        int low = 0;
+        int high = conversation.blocks.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (conversation.blocks.get(mid).first <= message) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return conversation.blocks.get(low);
+    }
+
+    // The last block inflated is kept, so paging back through one block reads the file once
+    private List<String> inflate(String chatKey, Conversation conversation, Block block) {
+        if (conversation.lastBlock == block) {
+            return conversation.lastBlockMessages;
+        }
+        Inflater inflater = new Inflater();
+        try (FileChannel channel = FileChannel.open(archiveFile(chatKey), StandardOpenOption.READ)) {
+            ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+            long position = block.offset + BLOCK_HEADER;
+            while (compressed.hasRemaining() && channel.read(compressed, position + compressed.position()) >= 0) {
+                // keep reading
+            }
+            inflater.setInput(compressed.array());
+            byte[] raw = new byte[block.rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+            Metrics.bytesRead("chats.archive", block.compressedLength);
+            Metrics.count("chat.blocks.inflated", 1);
+            List<String> messages = Arrays.asList(new String(raw, 0, length, StandardCharsets.UTF_8).split("\n", -1));
+            conversation.lastBlock = block;
+            conversation.lastBlockMessages = messages;
+            return messages;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archived messages of " + chatKey, e);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException("Corrupt archive block in " + chatKey, new IOException(e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Path file(String chatKey) {
+        return dir.resolve(encode(chatKey) + SUFFIX);
+    }
+
+    private Path archiveFile(String chatKey) {
+        return dir.resolve(encode(chatKey) + ARCHIVE_SUFFIX);
+    }
+
+    private static String encode(String chatKey) {
+        try {
+            return URLEncoder.encode(chatKey, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Undirected graph of accepted connections, kept as an adjacency set per user. Edges are
+ * appended to a small binary file next to the chats when the journal is compacted.
+ */
+class ConnectionGraph {
+    private final Path file;
+    private final Map<String, Set<String>> adjacency = new ConcurrentHashMap<>();
+    private final Queue<String[]> unsaved = new ConcurrentLinkedQueue<>();
+
+    ConnectionGraph(Path file) {
+        this.file = file;
+    }
+
+    /** Reads the saved edges; returns false if nothing has been saved yet. */
+    boolean load() throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                String a;
+                String b;
+                try {
+                    a = in.readUTF();
+                    b = in.readUTF();
+                } catch (EOFException e) {
+                    break; // a torn last edge is still in the journal
+                }
+                link(a, b);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Names the conversation between two users: both names joined by '_', with '%' and '_' inside
+     * each name escaped, so ("a_b", "c") and ("a", "b_c") get different conversations. Names
+     * without either character give the same key as before escaping was introduced.
+     */
+    static String chatKey(String a, String b) {
+        return a.compareTo(b) < 0 ? escape(a) + "_" + escape(b) : escape(b) + "_" + escape(a);
+    }
+
+    /**
+     * Splits a chat key into the two users it names, or returns null if no split names two of
+     * {@code users}. Keys written before escaping may hold several '_', so each is tried in turn.
+     */
+    static String[] parties(String chatKey, Set<String> users) {
+        for (int i = chatKey.indexOf('_'); i >= 0; i = chatKey.indexOf('_', i + 1)) {
+            String a = unescape(chatKey.substring(0, i));
+            String b = unescape(chatKey.substring(i + 1));
+            if (users.contains(a) && users.contains(b)) {
+                return new String[]{a, b};
+            }
+        }
+        return null;
+    }
+
+    private static String escape(String name) {
+        return name.replace("%", "%25").replace("_", "%5F");
+    }
+
+    private static String unescape(String name) {
+        return name.replace("%5F", "_").replace("%25", "%");
+    }
+
+    /** Rebuilds edges from chat keys written before the graph existed. */
+    void importChatKeys(Collection<String> chatKeys, Set<String> users) {
+        for (String chatKey : chatKeys) {
+            String[] parties = parties(chatKey, users);
+            if (parties != null) {
+                connect(parties[0], parties[1]);
+            }
+        }
+    }
+
+    /** Adds the edge; returns false if the two were already connected. */
+    boolean connect(String a, String b) {
+        if (!link(a, b)) {
+            return false;
+        }
+        unsaved.add(new String[]{a, b});
+        return true;
+    }
+
+    boolean isConnected(String a, String b) {
+        return adjacency.getOrDefault(a, Collections.emptySet()).contains(b);
+    }
+
+    Set<String> connections(String user) {
+        return Collections.unmodifiableSet(adjacency.getOrDefault(user, Collections.emptySet()));
+    }
+
+    /** Appends edges added since the last flush; creates the file even when there are none. */
+    void flush() throws IOException {
+        Files.createDirectories(file.getParent());
+        try (FileOutputStream stream = new FileOutputStream(file.toFile(), true);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            String[] edge;
+            while ((edge = unsaved.poll()) != null) {
+                out.writeUTF(edge[0]);
+                out.writeUTF(edge[1]);
+            }
+            out.flush();
+            stream.getFD().sync();
+            Metrics.bytesWritten("connections.bin", out.size());
+        }
+    }
+
+    private boolean link(String a, String b) {
+        boolean added = adjacency.computeIfAbsent(a, k -> ConcurrentHashMap.newKeySet()).add(b);
+        adjacency.computeIfAbsent(b, k -> ConcurrentHashMap.newKeySet()).add(a);
+        return added;
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.concurrent.*;
+
+/**
+ * Runs password hashing and verification on a small bounded pool, so a burst of logins can use
+ * at most a few cores and queue a bounded amount of work; anything beyond that is rejected.
+ */
+class CredentialPool {
+    private final ThreadPoolExecutor pool;
+
+    CredentialPool(int threads, int queueSize) {
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "credential-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** Hashes a new password with the current scheme. Throws RejectedExecutionException when saturated. */
+    String hash(String password) {
+        return await(pool.submit(() -> PasswordHasher.forNewPasswords().hash(password)));
+    }
+
+    /** Checks a password against a stored hash of any supported scheme. */
+    boolean verify(String password, String stored) {
+        return await(pool.submit(() -> PasswordHasher.forStored(stored).verify(password, stored)));
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CancellationException("Interrupted while hashing");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds multi-party exchanges: circles of three or more users in which each one teaches the next
+ * and the last teaches the first, so everyone learns something even when no two of them match
+ * both ways. Users are nodes of a directed graph with an edge from each teacher to each learner
+ * of a skill, read straight from the skill indexes.
+ *
+ * The search walks backwards from the user through the teachers of each need. A breadth-first
+ * pass forwards records how many steps the user needs to reach each learner; a branch is dropped
+ * as soon as its last user is too far away for the circle to close within the length bound.
+ * Shorter circles are searched first and the forward pass only goes one level deeper per length,
+ * so a dense graph stops at the short circles it already has. Branches below the first levels run
+ * as fork-join tasks.
+ */
+class CycleFinder {
+    static final class Cycle {
+        /** Members in teaching order, starting with the user the search was for. */
+        final List<String> users;
+        /** {@code skills.get(i)} is what {@code users.get(i)} teaches the next member. */
+        final List<String> skills;
+
+        Cycle(List<String> users, List<String> skills) {
+            this.users = users;
+            this.skills = skills;
+        }
+    }
+
+    private static final int MIN_LENGTH = 3;
+    private static final int FORK_DEPTH = 2;
+
+    private final SkillDictionary dictionary;
+    private final Map<Integer, Set<String>> teachersBySkill;
+    private final Map<Integer, Set<String>> learnersBySkill;
+    private final Map<String, SkillSet> skillsOffered;
+    private final Map<String, SkillSet> skillsNeeded;
+    private final ForkJoinPool pool;
+    private final long maxVisits;
+
+    CycleFinder(SkillDictionary dictionary,
+                Map<Integer, Set<String>> teachersBySkill,
+                Map<Integer, Set<String>> learnersBySkill,
+                Map<String, SkillSet> skillsOffered,
+                Map<String, SkillSet> skillsNeeded,
+                int threads,
+                long maxVisits) {
+        this.dictionary = dictionary;
+        this.teachersBySkill = teachersBySkill;
+        this.learnersBySkill = learnersBySkill;
+        this.skillsOffered = skillsOffered;
+        this.skillsNeeded = skillsNeeded;
+        this.pool = new ForkJoinPool(threads);
+        this.maxVisits = maxVisits;
+    }
+
+    /**
+     * Returns at most {@code limit} circles through {@code user} with up to {@code maxLength}
+     * members, shortest first. The search gives up after a fixed number of examined edges, so a
+     * very dense graph yields fewer circles rather than a slow menu.
+     */
+    List<Cycle> findCycles(String user, int maxLength, int limit) {
+        if (limit <= 0 || maxLength < MIN_LENGTH
+                || skillsNeeded.getOrDefault(user, SkillSet.EMPTY).isEmpty()
+                || skillsOffered.getOrDefault(user, SkillSet.EMPTY).isEmpty()) {
+            return Collections.emptyList();
+        }
+        AtomicLong visits = new AtomicLong(maxVisits);
+        Map<String, Integer> distance = new HashMap<>();
+        distance.put(user, 0);
+        List<String> frontier = Collections.singletonList(user);
+        for (int depth = 1; depth < MIN_LENGTH - 1; depth++) {
+            frontier = expand(frontier, depth, distance, visits);
+        }
+        List<Cycle> cycles = new ArrayList<>();
+        for (int length = MIN_LENGTH; length <= maxLength && cycles.size() < limit && visits.get() > 0; length++) {
+            // A circle of this length needs distances up to length - 1
+            frontier = expand(frontier, length - 1, distance, visits);
+            Queue<String[]> found = new ConcurrentLinkedQueue<>();
+            pool.invoke(new Extend(new String[]{user}, length, distance, found, new AtomicInteger(limit - cycles.size()), visits));
+            List<String[]> paths = new ArrayList<>(found);
+            // Parallel branches finish in any order; sorting keeps the listing stable
+            paths.sort(Comparator.comparing(path -> String.join("\u0000", path)));
+            for (String[] path : paths) {
+                if (cycles.size() == limit) {
+                    break;
+                }
+                cycles.add(toCycle(path));
+            }
+        }
+        return cycles;
+    }
+
+    // One level of the forward BFS along teaching edges: learners first reached in depth steps
+    private List<String> expand(List<String> frontier, int depth, Map<String, Integer> distance, AtomicLong visits) {
+        List<String> next = new ArrayList<>();
+        for (String teacher : frontier) {
+            SkillSet offers = skillsOffered.getOrDefault(teacher, SkillSet.EMPTY);
+            for (int i = 0; i < offers.size(); i++) {
+                Set<String> learners = learnersBySkill.getOrDefault(offers.get(i), Collections.emptySet());
+                if (visits.addAndGet(-learners.size()) < 0) {
+                    return next;
+                }
+                for (String learner : learners) {
+                    if (distance.putIfAbsent(learner, depth) == null) {
+                        next.add(learner);
+                    }
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Extends a path of the form user &lt;- t1 &lt;- ... &lt;- tk, where each member teaches the one
+     * before it, by one more teacher. The circle closes when the user teaches the last member.
+     */
+    private final class Extend extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] path;
+        private final int length;
+        private final Map<String, Integer> distance;
+        private final Queue<String[]> found;
+        private final AtomicInteger wanted;
+        private final AtomicLong visits;
+
+        Extend(String[] path, int length, Map<String, Integer> distance, Queue<String[]> found,
+               AtomicInteger wanted, AtomicLong visits) {
+            this.path = path;
+            this.length = length;
+            this.distance = distance;
+            this.found = found;
+            this.wanted = wanted;
+            this.visits = visits;
+        }
+
+        @Override
+        protected void compute() {
+            if (wanted.get() <= 0 || visits.get() <= 0) {
+                return;
+            }
+            int position = path.length;
+            // From the new member the circle still needs (length - position) edges back to it,
+            // and the user must reach the new member in that many forward steps
+            int budget = length - position;
+            List<Extend> children = new ArrayList<>();
+            Set<String> teachers = teachersOf(path[position - 1]);
+            if (visits.addAndGet(-teachers.size()) < 0) {
+                return;
+            }
+            for (String teacher : teachers) {
+                Integer steps = distance.get(teacher);
+                if (steps == null || steps == 0 || steps > budget || contains(path, teacher)) {
+                    continue;
+                }
+                String[] extended = Arrays.copyOf(path, position + 1);
+                extended[position] = teacher;
+                if (position + 1 == length) {
+                    // budget is 1 here, so the user teaches this member and the circle is closed
+                    if (wanted.getAndDecrement() > 0) {
+                        found.add(extended);
+                    }
+                    continue;
+                }
+                Extend child = new Extend(extended, length, distance, found, wanted, visits);
+                if (position <= FORK_DEPTH) {
+                    children.add(child);
+                } else {
+                    child.compute();
+                }
+            }
+            invokeAll(children);
+        }
+    }
+
+    private Set<String> teachersOf(String learner) {
+        SkillSet needs = skillsNeeded.getOrDefault(learner, SkillSet.EMPTY);
+        if (needs.size() == 1) {
+            return teachersBySkill.getOrDefault(needs.get(0), Collections.emptySet());
+        }
+        Set<String> teachers = new HashSet<>();
+        for (int i = 0; i < needs.size(); i++) {
+            teachers.addAll(teachersBySkill.getOrDefault(needs.get(i), Collections.emptySet()));
+        }
+        return teachers;
+    }
+
+    private static boolean contains(String[] path, String user) {
+        for (String member : path) {
+            if (member.equals(user)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The search path runs against the teaching direction; reverse it after the user
+    private Cycle toCycle(String[] path) {
+        List<String> users = new ArrayList<>(path.length);
+        users.add(path[0]);
+        for (int i = path.length - 1; i > 0; i--) {
+            users.add(path[i]);
+        }
+        List<String> skills = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            SkillSet offers = skillsOffered.getOrDefault(users.get(i), SkillSet.EMPTY);
+            int[] common = offers.intersect(skillsNeeded.getOrDefault(users.get((i + 1) % users.size()), SkillSet.EMPTY));
+            skills.add(common.length == 0 ? "?" : dictionary.name(common[0]));
+        }
+        return new Cycle(users, skills);
+    }
+}
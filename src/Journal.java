@@ -0,0 +1,383 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of typed mutation records.
+ * Appends are handed to a single writer thread that writes and fsyncs them in batches (group commit).
+ * Each record is framed as [length][crc32][payload] so a torn tail is detected and dropped on recovery.
+ * Every durable batch is also handed, in sequence order, to an optional commit listener.
+ */
+class Journal implements Closeable {
+    enum Type {
+        USER_REGISTERED,
+        SKILL_ADDED,
+        NOTIFICATION_ADDED,
+        NOTIFICATION_REMOVED,
+        CONVERSATION_OPENED,
+        CHAT_APPENDED,
+        CONTACT_UPDATED,
+        CONNECTION_ADDED,
+        NOTIFICATION_POSTED,
+        NOTIFICATION_DISMISSED,
+        MATCH_SUBSCRIBED,
+        MATCH_UNSUBSCRIBED
+    }
+
+    static final class Record {
+        final long seq;
+        final Type type;
+        final String[] fields;
+
+        Record(long seq, Type type, String[] fields) {
+            this.seq = seq;
+            this.type = type;
+            this.fields = fields;
+        }
+    }
+
+    private static final class Pending {
+        final Record record;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Pending(Record record) {
+            this.record = record;
+        }
+    }
+
+    private static final int MAGIC = 0x534A4E31; // "SJN1"
+    private static final int HEADER_SIZE = 12;
+    private static final int MAX_BATCH = 512;
+    private static final Pending SHUTDOWN = new Pending(null);
+
+    private final Path path;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private IOException broken;
+    private long nextSeq;
+    private int recordCount;
+    private Pending lastEnqueued;
+    private volatile Consumer<List<Record>> commitListener;
+
+    private Journal(Path path, FileChannel channel, long nextSeq, int recordCount) {
+        this.path = path;
+        this.channel = channel;
+        this.nextSeq = nextSeq;
+        this.recordCount = recordCount;
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the journal at {@code path}, replaying every intact record with a sequence number above
+     * {@code snapshotSeq} through {@code replay}. A corrupt or truncated tail is cut off.
+     */
+    static Journal open(Path path, long snapshotSeq, Consumer<Record> replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long lastSeq = snapshotSeq;
+        int replayed = 0;
+        long goodEnd = HEADER_SIZE;
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(channel, snapshotSeq);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a journal file: " + path);
+            }
+            lastSeq = Math.max(lastSeq, header.getLong());
+            try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                DataInputStream in = new DataInputStream(counter);
+                in.skipBytes(HEADER_SIZE);
+                long before = counter.count;
+                while (true) {
+                    Record record = readRecord(in);
+                    if (record == null) break;
+                    goodEnd += counter.count - before;
+                    before = counter.count;
+                    if (record.seq > snapshotSeq) {
+                        replay.accept(record);
+                        replayed++;
+                    }
+                    lastSeq = Math.max(lastSeq, record.seq);
+                }
+            }
+            channel.truncate(goodEnd);
+            channel.position(goodEnd);
+        }
+        return new Journal(path, channel, lastSeq + 1, replayed);
+    }
+
+    /** Queues a record for the next group commit; the future completes with its sequence number once durable. */
+    CompletableFuture<Long> appendAsync(Type type, String... fields) {
+        Pending pending;
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Journal is closed");
+            pending = new Pending(new Record(nextSeq++, type, fields));
+            recordCount++;
+            lastEnqueued = pending;
+            queue.add(pending);
+        }
+        return pending.done;
+    }
+
+    /** Appends a record and waits until it is durable. */
+    Record append(Type type, String... fields) throws IOException {
+        CompletableFuture<Long> done = appendAsync(type, fields);
+        try {
+            return new Record(done.get(), type, fields);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for journal commit");
+        } catch (ExecutionException e) {
+            throw new IOException("Journal commit failed", e.getCause());
+        }
+    }
+
+    /**
+     * Receives every batch once it is durable, on the writer thread and before the appenders are
+     * released, so a {@link #checkpoint} has always passed its records to the listener.
+     */
+    void onCommit(Consumer<List<Record>> listener) {
+        commitListener = listener;
+    }
+
+    /** Number of records in the journal since the last checkpoint. */
+    synchronized int size() {
+        return recordCount;
+    }
+
+    synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * Folds the journal into a snapshot: waits for in-flight appends, runs {@code writeSnapshot}
+     * with the sequence number it covers, then starts an empty journal based at that sequence.
+     * Fails without touching the journal if the last append did not commit.
+     */
+    synchronized void checkpoint(SnapshotWriter writeSnapshot) throws IOException {
+        if (lastEnqueued != null) {
+            try {
+                lastEnqueued.done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for journal commit");
+            } catch (ExecutionException e) {
+                throw new IOException("Journal commit failed before checkpoint", e.getCause());
+            }
+        }
+        long seq = nextSeq - 1;
+        writeSnapshot.write(seq);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel fresh = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(fresh, seq);
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel reopened = FileChannel.open(path, StandardOpenOption.WRITE);
+        reopened.position(HEADER_SIZE);
+        channel = reopened;
+        recordCount = 0;
+        lastEnqueued = null;
+    }
+
+    interface SnapshotWriter {
+        void write(long seq) throws IOException;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        queue.add(SHUTDOWN);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        boolean shutdown = false;
+        while (!shutdown) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - batch.size());
+            shutdown = batch.remove(SHUTDOWN);
+            if (batch.isEmpty()) continue;
+            if (broken != null) {
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(broken);
+                }
+                batch.clear();
+                continue;
+            }
+            FileChannel target = channel;
+            long goodEnd = -1;
+            try {
+                goodEnd = target.position();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * batch.size());
+                DataOutputStream out = new DataOutputStream(bytes);
+                for (Pending pending : batch) {
+                    writeRecord(out, pending.record);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                long start = System.nanoTime();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                target.force(false);
+                Metrics.time("journal.groupCommit", start);
+                Metrics.bytesWritten("journal.log", buffer.limit());
+                Metrics.count("journal.batches", 1);
+                Consumer<List<Record>> listener = commitListener;
+                if (listener != null) {
+                    List<Record> records = new ArrayList<>(batch.size());
+                    for (Pending pending : batch) {
+                        records.add(pending.record);
+                    }
+                    try {
+                        listener.accept(records);
+                    } catch (RuntimeException e) {
+                        // a listener failure must not fail the commit that is already durable
+                        System.out.println("⚠️ Commit listener failed: " + e);
+                    }
+                }
+                for (Pending pending : batch) {
+                    pending.done.complete(pending.record.seq);
+                }
+            } catch (IOException e) {
+                // A partial frame would hide every record appended after it from recovery, so the
+                // batch is cut off; if that fails too, no later append may land behind it
+                try {
+                    if (goodEnd >= 0) {
+                        target.truncate(goodEnd);
+                        target.position(goodEnd);
+                    }
+                } catch (IOException rollback) {
+                    e.addSuppressed(rollback);
+                    broken = new IOException("Journal write failed and could not be rolled back", e);
+                    System.out.println("❌ " + broken.getMessage() + "; every later commit will fail: " + e);
+                }
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long baseSeq) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(baseSeq).flip();
+        channel.truncate(0);
+        channel.write(header, 0);
+        channel.force(true);
+        channel.position(HEADER_SIZE);
+    }
+
+    private static byte[] encode(Record record) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(record.type.ordinal());
+            out.writeLong(record.seq);
+            out.writeShort(record.fields.length);
+            for (String field : record.fields) {
+                byte[] utf8 = field.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        byte[] payload = encode(record);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /** Reads the next record, or returns null at end of stream or at the first damaged record. */
+    static Record readRecord(DataInputStream in) throws IOException {
+        int length;
+        int checksum;
+        byte[] payload;
+        try {
+            length = in.readInt();
+            checksum = in.readInt();
+            if (length <= 0 || length > (64 << 20)) return null;
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        if ((int) crc.getValue() != checksum) return null;
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(payload));
+        int ordinal = body.readUnsignedByte();
+        if (ordinal >= Type.values().length) return null;
+        long seq = body.readLong();
+        String[] fields = new String[body.readUnsignedShort()];
+        for (int i = 0; i < fields.length; i++) {
+            byte[] utf8 = new byte[body.readInt()];
+            body.readFully(utf8);
+            fields[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return new Record(seq, Type.values()[ordinal], fields);
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Headless load test of the real menus. Scripted users run through the main menu and dashboard in
+ * pairs: both register, each teaches what the other wants to learn, one finds the other and sends a
+ * request, the other accepts, and they chat. Every scripted visit to the menus is its own
+ * {@link Session} whose input is the script and whose output is kept only to spot failures.
+ *
+ * Each step of a script is timed from the moment the menus read its first line to the moment they
+ * ask for the first line of the next step, which is the work the step caused. Input is handed over
+ * one line per read so the scanner cannot read ahead across a step boundary. A step the rate limits
+ * turn away fails its session and is left out of the latencies, which would otherwise mix the cost of
+ * the refusal into those of the real work.
+ */
+class LoadDriver {
+    private static final String PASSWORD = "Load#Pass1";
+    private static final int SKILL_LETTERS = 12;
+    private static final String[] RATE_LIMITED = {"too quickly", "Too many failed login attempts"};
+
+    private static final class Step {
+        final String name;
+        final List<String> lines;
+        // Moving between menus is not a request of its own and is neither timed nor counted
+        final boolean navigation;
+
+        Step(String name, String... lines) {
+            this(name, false, lines);
+        }
+
+        Step(String name, boolean navigation, String... lines) {
+            this.name = name;
+            this.navigation = navigation;
+            this.lines = Arrays.asList(lines);
+        }
+    }
+
+    // Output of one session; the whole of it is kept to find failures, and each step's share is
+    // checked for rate-limit refusals as the step ends
+    private static final class Transcript extends ByteArrayOutputStream {
+        synchronized String since(int mark) {
+            return new String(buf, mark, count - mark, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final class ScriptedInput implements Readable {
+        private final List<Step> steps;
+        private final Transcript output;
+        private int step = -1;
+        private int line;
+        private String pending;
+        private int offset;
+        private long stepStart;
+        private boolean timing;
+        private int mark;
+        private String rejection;
+
+        ScriptedInput(List<Step> steps, Transcript output) {
+            this.steps = steps;
+            this.output = output;
+        }
+
+        @Override
+        public int read(CharBuffer target) {
+            if (pending == null) {
+                if (step < 0 || line == steps.get(step).lines.size()) {
+                    finishStep();
+                    if (++step >= steps.size()) {
+                        return -1;
+                    }
+                    line = 0;
+                    stepStart = System.nanoTime();
+                    mark = output.size();
+                    timing = true;
+                }
+                pending = steps.get(step).lines.get(line++) + "\n";
+                offset = 0;
+            }
+            int n = Math.min(target.remaining(), pending.length() - offset);
+            target.put(pending, offset, offset + n);
+            offset += n;
+            if (offset == pending.length()) {
+                pending = null;
+            }
+            return n;
+        }
+
+        // The last step ends when the menus return rather than at a read
+        void finishStep() {
+            if (timing && steps.get(step).navigation) {
+                timing = false;
+            }
+            if (timing) {
+                long elapsed = System.nanoTime() - stepStart;
+                timing = false;
+                String said = output.since(mark);
+                for (String refusal : RATE_LIMITED) {
+                    int at = said.indexOf(refusal);
+                    if (at >= 0) {
+                        rejected.incrementAndGet();
+                        if (rejection == null) {
+                            int start = said.lastIndexOf('\n', at) + 1;
+                            int end = said.indexOf('\n', at);
+                            rejection = steps.get(step).name + ": " + said.substring(start, end < 0 ? said.length() : end);
+                        }
+                        return;
+                    }
+                }
+                histogram(steps.get(step).name).record(elapsed);
+                operations.incrementAndGet();
+            }
+        }
+    }
+
+    private final Path dataDir;
+    private final int users;
+    private final int threads;
+    private final int messages;
+    private final long seed = System.currentTimeMillis();
+    private final String run = Long.toString(seed, 36);
+    private final Map<String, Metrics.Histogram> histograms = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final Map<String, Long> sizesBefore;
+    private volatile String firstFailure;
+    private long elapsedNanos;
+
+    /** {@code users} is rounded up to an even number; each pair exchanges {@code messages} chat lines. */
+    LoadDriver(Path dataDir, int users, int threads, int messages) throws IOException {
+        this.dataDir = dataDir;
+        this.users = users + (users & 1);
+        this.threads = Math.max(1, threads);
+        this.messages = messages;
+        this.sizesBefore = sizes();
+    }
+
+    /** Runs every pair's scripts against {@code menus}, pairs in parallel on the configured threads. */
+    void run(Consumer<Session> menus) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int pair = 0; pair < users / 2; pair++) {
+            int p = pair;
+            pool.execute(() -> runPair(menus, p));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    private void runPair(Consumer<Session> menus, int pair) {
+        String a = "load" + run + "a" + pair;
+        String b = "load" + run + "b" + pair;
+        Random random = new Random(seed * 31 + pair);
+        String skillA = skillName(random);
+        String skillB = skillName(random);
+
+        // The skill names are random letters, so no other pair's skill is close enough to be suggested
+        // and each user's only match is their partner
+        if (!session(menus, register(a))
+                || !session(menus, register(b))
+                || !session(menus, dashboard(a, new Step("addTeach", "1", skillA), new Step("addLearn", "2", skillB, "no")))
+                || !session(menus, dashboard(b, new Step("addTeach", "1", skillB), new Step("addLearn", "2", skillA),
+                        new Step("findMatches", "4", "1")))
+                || !session(menus, dashboard(a, new Step("acceptRequest", "6", "yes", "1", "yes")))) {
+            return;
+        }
+        for (int turn = 0; turn < 2; turn++) {
+            String user = turn == 0 ? a : b;
+            int count = messages / 2 + (turn == 0 ? messages % 2 : 0);
+            List<Step> chat = new ArrayList<>();
+            chat.add(new Step("openChat", "7", "1"));
+            for (int i = 0; i < count; i++) {
+                chat.add(new Step("chatMessage", "message " + i + " from " + user + " about " + (turn == 0 ? skillA : skillB)));
+            }
+            chat.add(new Step("closeChat", "exit"));
+            if (!session(menus, dashboard(user, chat.toArray(new Step[0])))) {
+                return;
+            }
+        }
+    }
+
+    private static String skillName(Random random) {
+        char[] letters = new char[SKILL_LETTERS];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static List<Step> register(String user) {
+        return Arrays.asList(new Step("register", "1", user, PASSWORD, user + "@gmail.com", "0123456789"),
+                new Step("exit", true, "3"));
+    }
+
+    private static List<Step> dashboard(String user, Step... actions) {
+        List<Step> steps = new ArrayList<>();
+        steps.add(new Step("login", "2", user, PASSWORD));
+        steps.addAll(Arrays.asList(actions));
+        steps.add(new Step("logout", true, "8"));
+        steps.add(new Step("exit", true, "3"));
+        return steps;
+    }
+
+    // A session fails when the script runs out before the menus finish, the menus report an error or a
+    // rate limit turns a step away
+    private boolean session(Consumer<Session> menus, List<Step> steps) {
+        Transcript output = new Transcript();
+        ScriptedInput input = new ScriptedInput(steps, output);
+        String failure = null;
+        try (PrintStream out = new PrintStream(output, false, "UTF-8")) {
+            menus.accept(new Session(new Scanner(input), out));
+            input.finishStep();
+        } catch (NoSuchElementException e) {
+            failure = "script ended while the menus still expected input";
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+        sessions.incrementAndGet();
+        String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        int error = text.indexOf("❌");
+        if (failure == null && error >= 0) {
+            int end = text.indexOf('\n', error);
+            failure = text.substring(error, end < 0 ? text.length() : end);
+        }
+        if (failure == null) {
+            failure = input.rejection;
+        }
+        if (failure != null) {
+            failures.incrementAndGet();
+            if (firstFailure == null) {
+                firstFailure = failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private Metrics.Histogram histogram(String step) {
+        return histograms.computeIfAbsent(step, k -> Metrics.histogram("load." + k));
+    }
+
+    /** Prints throughput, latency per step and how much each data file grew; call after persisting. */
+    void report(PrintStream out) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        out.println("\n📊 Load test: " + users + " users in " + users / 2 + " pairs on " + threads + " threads, "
+                + messages + " chat messages per pair");
+        out.println(String.format("Finished in %.1f s: %.1f sessions/s, %.1f operations/s, %d of %d sessions failed",
+                seconds, sessions.get() / seconds, operations.get() / seconds, failures.get(), sessions.get()));
+        if (firstFailure != null) {
+            out.println("⚠️ First failure: " + firstFailure);
+        }
+        if (rejected.get() > 0) {
+            out.println("⚠️ " + rejected.get() + " operations were rejected by rate limits and left out of the latencies below");
+        }
+        for (String limit : new String[]{"login", "connectionRequests", "chat"}) {
+            long rejected = Metrics.counter("ratelimit." + limit + ".rejected");
+            if (rejected > 0) {
+                out.println("⚠️ " + rejected + " " + limit + " rejected by rate limits (-Dskillexchange.limit." + limit + ".perMinute=0 lifts it)");
+            }
+        }
+        out.println(String.format("%n%-15s %8s %10s %10s %10s", "operation", "count", "p50 ms", "p99 ms", "max ms"));
+        synchronized (histograms) {
+            for (Map.Entry<String, Metrics.Histogram> entry : histograms.entrySet()) {
+                Metrics.Histogram h = entry.getValue();
+                out.println(String.format("%-15s %8d %10.2f %10.2f %10.2f", entry.getKey(), h.count(),
+                        h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.max() / 1e6));
+            }
+        }
+        out.println(String.format("%n%-15s %12s %12s", "data", "growth", "size"));
+        Map<String, Long> after = sizes();
+        Set<String> names = new TreeSet<>(after.keySet());
+        names.addAll(sizesBefore.keySet());
+        long total = 0;
+        long totalBefore = 0;
+        for (String name : names) {
+            long size = after.getOrDefault(name, 0L);
+            long before = sizesBefore.getOrDefault(name, 0L);
+            total += size;
+            totalBefore += before;
+            out.println(String.format("%-15s %12s %12s", name, signed(size - before), bytes(size)));
+        }
+        out.println(String.format("%-15s %12s %12s", "total", signed(total - totalBefore), bytes(total)));
+        out.println(String.format("~%s per user", bytes((total - totalBefore) / users)));
+        out.flush();
+    }
+
+    // Size of each top-level file or directory in the data directory
+    private Map<String, Long> sizes() throws IOException {
+        Map<String, Long> sizes = new TreeMap<>();
+        if (!Files.isDirectory(dataDir)) {
+            return sizes;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dataDir)) {
+            for (Path entry : entries) {
+                long size = 0;
+                try (Stream<Path> files = Files.walk(entry)) {
+                    for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+                        Path file = it.next();
+                        if (Files.isRegularFile(file)) {
+                            size += Files.size(file);
+                        }
+                    }
+                }
+                sizes.put(entry.getFileName().toString(), size);
+            }
+        }
+        return sizes;
+    }
+
+    private static String signed(long bytes) {
+        return (bytes < 0 ? "-" : "+") + bytes(Math.abs(bytes));
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.*;
+
+/**
+ * Ranks potential skill-exchange partners by two-way fit: how many of the user's needs a
+ * candidate can teach, plus how many of the candidate's needs the user can teach back.
+ * Only the best K candidates are kept, in a bounded min-heap. A need is also met by skills the
+ * search index considers related, such as "python basics" or "pyhton" for "python".
+ */
+class MatchEngine {
+    static final class Match {
+        final String user;
+        final List<String> canTeachYou;
+        final List<String> wantsToLearn;
+
+        Match(String user, List<String> canTeachYou, List<String> wantsToLearn) {
+            this.user = user;
+            this.canTeachYou = canTeachYou;
+            this.wantsToLearn = wantsToLearn;
+        }
+
+        int score() {
+            return canTeachYou.size() + wantsToLearn.size();
+        }
+    }
+
+    private static final Comparator<Match> BEST_FIRST = Comparator
+            .comparingInt(Match::score).reversed()
+            .thenComparing(Comparator.comparingInt((Match m) -> m.canTeachYou.size()).reversed())
+            .thenComparing(m -> m.user);
+
+    private static final int RELATED_LIMIT = 16;
+
+    private final SkillDictionary dictionary;
+    private final SkillSearchIndex search;
+    private final Map<Integer, Set<String>> teachersBySkill;
+    private final Map<String, SkillSet> skillsOffered;
+    private final Map<String, SkillSet> skillsNeeded;
+
+    MatchEngine(SkillDictionary dictionary,
+                SkillSearchIndex search,
+                Map<Integer, Set<String>> teachersBySkill,
+                Map<String, SkillSet> skillsOffered,
+                Map<String, SkillSet> skillsNeeded) {
+        this.dictionary = dictionary;
+        this.search = search;
+        this.teachersBySkill = teachersBySkill;
+        this.skillsOffered = skillsOffered;
+        this.skillsNeeded = skillsNeeded;
+    }
+
+    /** Returns at most {@code k} partners for {@code user}, best first. */
+    List<Match> topMatches(String user, int k) {
+        SkillSet myNeeds = skillsNeeded.getOrDefault(user, SkillSet.EMPTY);
+        if (k <= 0 || myNeeds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Candidates are the teachers of at least one of my needs, found through the index.
+        // Each need counts once per teacher; the exact skill comes first in related() so it wins.
+        Map<String, Map<Integer, String>> teaches = new HashMap<>();
+        for (int i = 0; i < myNeeds.size(); i++) {
+            int need = myNeeds.get(i);
+            for (int skill : search.related(need, RELATED_LIMIT)) {
+                for (String teacher : teachersBySkill.getOrDefault(skill, Collections.emptySet())) {
+                    if (!teacher.equals(user)) {
+                        teaches.computeIfAbsent(teacher, t -> new LinkedHashMap<>()).putIfAbsent(need, dictionary.name(skill));
+                    }
+                }
+            }
+        }
+
+        SkillSet myOffers = skillsOffered.getOrDefault(user, SkillSet.EMPTY);
+        PriorityQueue<Match> best = new PriorityQueue<>(k + 1, BEST_FIRST.reversed());
+        for (Map.Entry<String, Map<Integer, String>> entry : teaches.entrySet()) {
+            int[] common = skillsNeeded.getOrDefault(entry.getKey(), SkillSet.EMPTY).intersect(myOffers);
+            List<String> wantsToLearn = new ArrayList<>(common.length);
+            for (int id : common) {
+                wantsToLearn.add(dictionary.name(id));
+            }
+            best.add(new Match(entry.getKey(), new ArrayList<>(entry.getValue().values()), wantsToLearn));
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(BEST_FIRST);
+        return ranked;
+    }
+}
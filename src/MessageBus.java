@@ -0,0 +1,132 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process publish/subscribe for live chats. Each conversation with someone watching it has a
+ * fixed-size ring buffer of its latest messages; publishing overwrites the oldest slot and never
+ * waits for subscribers. Every subscriber is drained by its own delivery task, so a reader that
+ * cannot keep up only delays itself: once it falls a full ring behind, the messages it missed
+ * are skipped and reported instead of piling up in memory.
+ */
+class MessageBus {
+    /** A chat line and its position in the conversation. */
+    static final class Message {
+        final int position;
+        final String text;
+
+        Message(int position, String text) {
+            this.position = position;
+            this.text = text;
+        }
+    }
+
+    interface Listener {
+        /** Called from the delivery task with messages in publish order; {@code skipped} were lost to lag. */
+        void deliver(List<Message> messages, long skipped);
+    }
+
+    private static final class Topic {
+        final Message[] ring;
+        long published;
+        int subscribers;
+
+        Topic(int capacity) {
+            ring = new Message[capacity];
+        }
+
+        synchronized void publish(Message message) {
+            ring[(int) (published % ring.length)] = message;
+            published++;
+            notifyAll();
+        }
+    }
+
+    final class Subscription implements AutoCloseable {
+        private final String key;
+        private final Topic topic;
+        private long next;
+        private volatile boolean closed;
+
+        private Subscription(String key, Topic topic) {
+            this.key = key;
+            this.topic = topic;
+            synchronized (topic) {
+                next = topic.published;
+            }
+        }
+
+        private void run(Listener listener) {
+            while (true) {
+                List<Message> batch = new ArrayList<>();
+                long skipped;
+                synchronized (topic) {
+                    while (!closed && topic.published == next) {
+                        try {
+                            topic.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    long oldest = Math.max(next, topic.published - topic.ring.length);
+                    skipped = oldest - next;
+                    for (long seq = oldest; seq < topic.published; seq++) {
+                        batch.add(topic.ring[(int) (seq % topic.ring.length)]);
+                    }
+                    next = topic.published;
+                }
+                // Delivery may block on a slow socket; it happens outside the topic lock
+                Metrics.count("chat.delivered", batch.size());
+                if (skipped > 0) {
+                    Metrics.count("chat.skipped", skipped);
+                }
+                listener.deliver(batch, skipped);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (topic) {
+                closed = true;
+                topic.notifyAll();
+            }
+            topics.computeIfPresent(key, (k, t) -> --t.subscribers == 0 ? null : t);
+        }
+    }
+
+    private final int ringSize;
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final ExecutorService delivery = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "chat-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    MessageBus(int ringSize) {
+        this.ringSize = ringSize;
+    }
+
+    /** Delivers every message published to {@code key} from now on until the subscription is closed. */
+    Subscription subscribe(String key, Listener listener) {
+        Topic topic = topics.compute(key, (k, t) -> {
+            Topic target = t == null ? new Topic(ringSize) : t;
+            target.subscribers++;
+            return target;
+        });
+        Subscription subscription = new Subscription(key, topic);
+        delivery.execute(() -> subscription.run(listener));
+        return subscription;
+    }
+
+    /** Hands the message to live subscribers; a conversation nobody is watching costs nothing. */
+    void publish(String key, int position, String message) {
+        Topic topic = topics.get(key);
+        if (topic != null) {
+            topic.publish(new Message(position, message));
+        }
+    }
+}
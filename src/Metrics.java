@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.*;
+
+/**
+ * Process-wide counters, gauges and latency histograms. Recording is a few uncontended atomic
+ * adds, so it stays on in production. Everything is readable as text through {@link #dump}, in a
+ * file rewritten by {@link #dumpEvery}, and over JMX as {@code SkillExchange:type=Metrics}.
+ */
+final class Metrics {
+    /**
+     * Log-linear histogram of nanosecond latencies: 8 buckets per power of two, so a percentile
+     * is reported within 12.5% of the true value.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 << SUB_BITS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(index(value));
+            count.increment();
+            sum.add(value);
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        /** Upper bound of the bucket holding the {@code p}-th percentile, in nanoseconds. */
+        long percentile(double p) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            long rank = (long) Math.ceil(total * p / 100.0);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank && snapshot[i] > 0) {
+                    return Math.min(upperBound(i), max.get());
+                }
+            }
+            return 0;
+        }
+
+        private static int index(long value) {
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            if (exp < SUB_BITS) {
+                return (int) value;
+            }
+            return ((exp - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB_COUNT) {
+                return index;
+            }
+            int exp = (index >> SUB_BITS) + SUB_BITS - 1;
+            long lower = (long) (SUB_COUNT + (index & (SUB_COUNT - 1))) << (exp - SUB_BITS);
+            return lower + (1L << (exp - SUB_BITS)) - 1;
+        }
+    }
+
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /** Records the time since {@code startNanos} (from {@link System#nanoTime()}) under {@code operation}. */
+    static void time(String operation, long startNanos) {
+        histogram(operation).record(System.nanoTime() - startNanos);
+    }
+
+    static void count(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    static void bytesRead(String file, long bytes) {
+        count("bytes.read." + file, bytes);
+    }
+
+    static void bytesWritten(String file, long bytes) {
+        count("bytes.written." + file, bytes);
+    }
+
+    static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    static long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    static void dump(PrintStream out) {
+        out.println("# counters");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            out.println(entry.getKey() + " " + entry.getValue().sum());
+        }
+        out.println("# gauges");
+        for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+            out.println(entry.getKey() + " " + entry.getValue().getAsLong());
+        }
+        out.println("# latency_us count mean p50 p90 p99 max");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = entry.getValue();
+            out.println(entry.getKey() + " " + h.count() + " " + micros(h.mean()) + " " + micros(h.percentile(50))
+                    + " " + micros(h.percentile(90)) + " " + micros(h.percentile(99)) + " " + micros(h.max()));
+        }
+        out.flush();
+    }
+
+    /** Rewrites {@code file} with a {@link #dump} every {@code seconds} on a daemon thread. */
+    static void dumpEvery(Path file, int seconds) {
+        Thread dumper = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(seconds * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    dumpTo(file);
+                } catch (IOException e) {
+                    System.out.println("⚠️ Failed to write " + file + ": " + e.getMessage());
+                }
+            }
+        }, "metrics-dump");
+        dumper.setDaemon(true);
+        dumper.start();
+    }
+
+    // Written beside the file and moved over it, so a reader never sees half a dump
+    static void dumpTo(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (PrintStream out = new PrintStream(Files.newOutputStream(tmp), false, "UTF-8")) {
+            dump(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("SkillExchange:type=Metrics"));
+        } catch (JMException e) {
+            System.out.println("⚠️ Metrics are not available over JMX: " + e.getMessage());
+        }
+    }
+
+    // Attribute names follow the metric names, so new counters appear without a fixed interface
+    private static final class MetricsMBean implements DynamicMBean {
+        private Map<String, Long> values() {
+            Map<String, Long> values = new TreeMap<>();
+            counters.forEach((name, counter) -> values.put(name, counter.sum()));
+            gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+            histograms.forEach((name, h) -> {
+                values.put(name + ".count", h.count());
+                values.put(name + ".p50Micros", micros(h.percentile(50)));
+                values.put(name + ".p99Micros", micros(h.percentile(99)));
+                values.put(name + ".maxMicros", micros(h.max()));
+            });
+            return values;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long value = values().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = values();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    list.add(new Attribute(attribute, values.get(attribute)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Set<String> names = values().keySet();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[names.size()];
+            int i = 0;
+            for (String name : names) {
+                attributes[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+            }
+            return new MBeanInfo(getClass().getName(), "Skill Exchange metrics", attributes, null, null, null);
+        }
+    }
+}
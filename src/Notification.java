@@ -0,0 +1,87 @@
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One entry in a user's inbox. The text shown to the user is rendered from the fields, so nothing
+ * has to be parsed back out of it.
+ */
+final class Notification {
+    enum Kind {
+        CONNECTION_REQUEST,
+        CONTACT_SHARED,
+        MESSAGE,
+        MATCH_ALERT
+    }
+
+    private static final String REQUEST_SUFFIX = " wants to connect with you for skill exchange.";
+    private static final String SHARED_SUFFIX = " has shared their contact details with you:\n";
+
+    final long id;
+    final Kind kind;
+    final String from;
+    final String to;
+    final long timestamp;
+    final String detail;
+
+    Notification(long id, Kind kind, String from, String to, long timestamp, String detail) {
+        this.id = id;
+        this.kind = kind;
+        this.from = from;
+        this.to = to;
+        this.timestamp = timestamp;
+        this.detail = detail;
+    }
+
+    /** Recovers a record from the free-form text that older versions stored. */
+    static Notification fromLegacy(long id, String to, String text) {
+        int request = text.indexOf(" wants to connect with you");
+        if (request > 0) {
+            return new Notification(id, Kind.CONNECTION_REQUEST, text.substring(0, request), to, 0, "");
+        }
+        int shared = text.indexOf(SHARED_SUFFIX);
+        if (shared > 0) {
+            return new Notification(id, Kind.CONTACT_SHARED, text.substring(0, shared), to, 0,
+                    text.substring(shared + SHARED_SUFFIX.length()));
+        }
+        return new Notification(id, Kind.MESSAGE, "", to, 0, text);
+    }
+
+    String text() {
+        switch (kind) {
+            case CONNECTION_REQUEST:
+                return from + REQUEST_SUFFIX;
+            case CONTACT_SHARED:
+                return from + SHARED_SUFFIX + detail;
+            case MATCH_ALERT:
+                return "🔔 " + from + " now teaches \"" + detail + "\", which you want to learn.";
+            default:
+                return detail;
+        }
+    }
+
+    @Override
+    public String toString() {
+        // Notifications migrated from text have no timestamp
+        if (timestamp == 0) {
+            return text();
+        }
+        return "[" + new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(timestamp)) + "] " + text();
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(id);
+        out.writeByte(kind.ordinal());
+        out.writeUTF(from);
+        out.writeLong(timestamp);
+        out.writeUTF(detail);
+    }
+
+    static Notification readFrom(DataInput in, String to) throws IOException {
+        long id = in.readLong();
+        Kind kind = Kind.values()[in.readUnsignedByte()];
+        String from = in.readUTF();
+        long timestamp = in.readLong();
+        return new Notification(id, kind, from, to, timestamp, in.readUTF());
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.*;
+
+/**
+ * A user's notifications, oldest first, capped at a fixed size by dropping the oldest. Entries
+ * are indexed by ID for O(1) removal and by (sender, kind) so a sender cannot queue the same kind
+ * of notification twice. Match alerts also key on the skill, one pending alert per skill taught.
+ */
+class NotificationInbox {
+    private final int capacity;
+    private final LinkedHashMap<Long, Notification> byId = new LinkedHashMap<>();
+    private final Map<String, Long> pending = new HashMap<>();
+
+    NotificationInbox(int capacity) {
+        this.capacity = capacity;
+    }
+
+    // Free-form messages have no sender to deduplicate on
+    private static String key(String from, Notification.Kind kind, String detail) {
+        switch (kind) {
+            case MESSAGE:
+                return null;
+            case MATCH_ALERT:
+                return kind.ordinal() + ":" + from + ":" + detail;
+            default:
+                return kind.ordinal() + ":" + from;
+        }
+    }
+
+    /** Adds the notification unless one of the same kind from the same sender is still waiting. */
+    synchronized boolean add(Notification notification) {
+        String key = key(notification.from, notification.kind, notification.detail);
+        if (key != null && pending.putIfAbsent(key, notification.id) != null) {
+            return false;
+        }
+        byId.put(notification.id, notification);
+        if (byId.size() > capacity) {
+            remove(byId.keySet().iterator().next());
+        }
+        return true;
+    }
+
+    synchronized boolean contains(String from, Notification.Kind kind, String detail) {
+        String key = key(from, kind, detail);
+        return key != null && pending.containsKey(key);
+    }
+
+    synchronized Notification remove(long id) {
+        Notification removed = byId.remove(id);
+        if (removed != null) {
+            String key = key(removed.from, removed.kind, removed.detail);
+            if (key != null) {
+                pending.remove(key, id);
+            }
+        }
+        return removed;
+    }
+
+    /** Removes by rendered text; only needed to replay journal records written before IDs existed. */
+    synchronized void removeLegacy(String text) {
+        for (Notification notification : byId.values()) {
+            if (notification.text().equals(text)) {
+                remove(notification.id);
+                return;
+            }
+        }
+    }
+
+    synchronized List<Notification> list() {
+        return new ArrayList<>(byId.values());
+    }
+
+    synchronized int size() {
+        return byId.size();
+    }
+}
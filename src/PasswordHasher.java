@@ -0,0 +1,21 @@
+/**
+ * A password hashing scheme. Stored hashes carry a scheme prefix ("pbkdf2$...") so several
+ * schemes can verify side by side; the unprefixed hex in existing users.txt files is SHA-256.
+ */
+interface PasswordHasher {
+    PasswordHasher SHA256 = new Sha256PasswordHasher();
+    PasswordHasher PBKDF2 = new Pbkdf2PasswordHasher(Integer.getInteger("skillexchange.password.iterations", 100_000));
+
+    String hash(String password);
+
+    boolean verify(String password, String stored);
+
+    /** The scheme used for new registrations, chosen with -Dskillexchange.password.scheme (pbkdf2 or sha256). */
+    static PasswordHasher forNewPasswords() {
+        return "sha256".equals(System.getProperty("skillexchange.password.scheme")) ? SHA256 : PBKDF2;
+    }
+
+    static PasswordHasher forStored(String stored) {
+        return stored.startsWith(Pbkdf2PasswordHasher.PREFIX) ? PBKDF2 : SHA256;
+    }
+}
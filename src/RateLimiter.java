@@ -0,0 +1,118 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Per-user token buckets: each key may act {@code burst} times at once and then at a steady rate.
+ * Buckets are spread over a fixed set of stripes by key hash, so a check takes one uncontended
+ * monitor and a hash lookup, and users on different stripes never wait for each other.
+ *
+ * A bucket that has refilled completely is the same as no bucket, so once a stripe grows past
+ * its bound those are dropped; memory follows the number of recently active users.
+ */
+class RateLimiter {
+    private static final int STRIPES = 64;
+    private static final int MAX_BUCKETS_PER_STRIPE = 1024;
+
+    private static final class Bucket {
+        double tokens;
+        long updated;
+
+        Bucket(double tokens, long updated) {
+            this.tokens = tokens;
+            this.updated = updated;
+        }
+    }
+
+    private final String name;
+    private final double tokensPerNano;
+    private final double burst;
+    private final Map<String, Bucket>[] stripes;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    RateLimiter(String name, int perMinute, int burst) {
+        this.name = name;
+        this.tokensPerNano = perMinute / 60e9;
+        this.burst = Math.max(1, burst);
+        stripes = new Map[STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new HashMap<>();
+        }
+    }
+
+    /**
+     * Reads {@code skillexchange.limit.<name>.perMinute} and {@code .burst}; a rate of 0 turns
+     * the limit off.
+     */
+    static RateLimiter configured(String name, int perMinute, int burst) {
+        return new RateLimiter(name,
+                Integer.getInteger("skillexchange.limit." + name + ".perMinute", perMinute),
+                Integer.getInteger("skillexchange.limit." + name + ".burst", burst));
+    }
+
+    /** Takes a token from {@code key}'s bucket; false, and counted as a rejection, when it is empty. */
+    boolean tryAcquire(String key) {
+        if (tokensPerNano <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        Map<String, Bucket> stripe = stripeFor(key);
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            if (bucket == null) {
+                if (stripe.size() >= MAX_BUCKETS_PER_STRIPE) {
+                    dropFull(stripe, now);
+                }
+                bucket = new Bucket(burst, now);
+                stripe.put(key, bucket);
+            } else {
+                refill(bucket, now);
+            }
+            if (bucket.tokens >= 1) {
+                bucket.tokens--;
+                return true;
+            }
+        }
+        Metrics.count("ratelimit." + name + ".rejected", 1);
+        return false;
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire}, for limits that only charge attempts that
+     * turn out to fail. Taking the token first reserves it, so concurrent attempts cannot all get
+     * through on the last one.
+     */
+    void release(String key) {
+        if (tokensPerNano <= 0) {
+            return;
+        }
+        Map<String, Bucket> stripe = stripeFor(key);
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            if (bucket != null) {
+                refill(bucket, System.nanoTime());
+                bucket.tokens = Math.min(burst, bucket.tokens + 1);
+            }
+        }
+    }
+
+    private Map<String, Bucket> stripeFor(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private void refill(Bucket bucket, long now) {
+        bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updated) * tokensPerNano);
+        bucket.updated = now;
+    }
+
+    private void dropFull(Map<String, Bucket> stripe, long now) {
+        Iterator<Bucket> buckets = stripe.values().iterator();
+        while (buckets.hasNext()) {
+            Bucket bucket = buckets.next();
+            if (bucket.tokens + (now - bucket.updated) * tokensPerNano >= burst) {
+                buckets.remove();
+            }
+        }
+    }
+}
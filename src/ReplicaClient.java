@@ -0,0 +1,178 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.function.Consumer;
+
+/**
+ * Replica side of replication. {@link #sync} copies the primary's snapshot into the data directory
+ * before it is loaded; {@link #start} then applies the primary's records as they arrive and
+ * acknowledges them. After a dropped connection it reconnects and resumes after the last record
+ * applied, so nothing is applied twice or skipped.
+ */
+class ReplicaClient {
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final String STAGING = "replica-staging";
+
+    private final int port;
+    private final Path dataDir;
+    private final Consumer<Journal.Record> apply;
+    private volatile long applied = -1;
+    private volatile long primarySeq = -1;
+
+    ReplicaClient(int port, Path dataDir, Consumer<Journal.Record> apply) {
+        this.port = port;
+        this.dataDir = dataDir;
+        this.apply = apply;
+        Metrics.gauge("replication.appliedSeq", () -> applied);
+        Metrics.gauge("replication.lag.records", () -> Math.max(0, primarySeq - applied));
+    }
+
+    /**
+     * Replaces the local shard and chat files with a snapshot from the primary; returns its sequence
+     * number. The snapshot is received into a staging directory and swapped in only once complete,
+     * so a broken transfer leaves the previous files in place.
+     */
+    long sync() throws IOException {
+        long start = System.nanoTime();
+        Path staging = dataDir.resolve(STAGING);
+        ReplicationServer.deleteTree(staging);
+        long seq;
+        try (Socket socket = connect(-1)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            byte[] buffer = new byte[1 << 16];
+            while (true) {
+                byte tag = in.readByte();
+                if (tag == ReplicationServer.SNAPSHOT_END) {
+                    seq = in.readLong();
+                    break;
+                }
+                if (tag != ReplicationServer.FILE) {
+                    throw new IOException("unexpected frame '" + (char) tag + "' in snapshot");
+                }
+                Path target = resolve(staging.resolve("new"), in.readUTF());
+                long remaining = in.readLong();
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    while (remaining > 0) {
+                        int n = (int) Math.min(buffer.length, remaining);
+                        in.readFully(buffer, 0, n);
+                        out.write(buffer, 0, n);
+                        remaining -= n;
+                    }
+                }
+            }
+        }
+        swapIn(staging);
+        applied = seq;
+        primarySeq = seq;
+        Metrics.time("replication.sync", start);
+        return applied;
+    }
+
+    // Renames the old directories aside before renaming the received ones into place; the journal
+    // left from an earlier run describes the old files and goes with them
+    private void swapIn(Path staging) throws IOException {
+        Path old = Files.createDirectories(staging.resolve("old"));
+        for (String dir : ReplicationServer.SNAPSHOT_DIRS) {
+            Path current = dataDir.resolve(dir);
+            if (Files.exists(current)) {
+                Files.move(current, old.resolve(dir));
+            }
+            Path received = staging.resolve("new").resolve(dir);
+            if (Files.exists(received)) {
+                Files.move(received, current);
+            }
+        }
+        Files.deleteIfExists(dataDir.resolve("journal.log"));
+        ReplicationServer.deleteTree(staging);
+    }
+
+    /** Follows the primary from a background thread, starting after the snapshot from {@link #sync}. */
+    void start() {
+        Thread follower = new Thread(this::follow, "replica-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    private void follow() {
+        while (true) {
+            try (Socket socket = connect(applied)) {
+                if (!stream(socket)) {
+                    System.out.println("❌ The primary no longer has the records this replica needs. Restart the replica to copy a fresh snapshot.");
+                    return;
+                }
+            } catch (IOException e) {
+                // primary restarting or unreachable; retry below
+            }
+            Metrics.count("replication.reconnects", 1);
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Returns false when the primary refuses to resume
+    private boolean stream(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        while (true) {
+            byte tag = in.readByte();
+            switch (tag) {
+                case ReplicationServer.RECORD:
+                    long committedAt = in.readLong();
+                    Journal.Record record = Journal.readRecord(in);
+                    if (record == null) {
+                        throw new IOException("damaged record from primary");
+                    }
+                    if (record.seq > applied) {
+                        apply.accept(record);
+                        applied = record.seq;
+                        primarySeq = Math.max(primarySeq, record.seq);
+                        Metrics.histogram("replication.delay").record(Math.max(0, System.currentTimeMillis() - committedAt) * 1_000_000);
+                    }
+                    // Acknowledge once the frames received so far are applied, not after every record
+                    if (in.available() == 0) {
+                        ack(out);
+                    }
+                    break;
+                case ReplicationServer.HEARTBEAT:
+                    primarySeq = in.readLong();
+                    in.readLong();
+                    ack(out);
+                    break;
+                case ReplicationServer.RESYNC:
+                    return false;
+                default:
+                    throw new IOException("unexpected frame '" + (char) tag + "'");
+            }
+        }
+    }
+
+    private void ack(DataOutputStream out) throws IOException {
+        out.writeByte(ReplicationServer.ACK);
+        out.writeLong(applied);
+        out.flush();
+    }
+
+    private Socket connect(long seq) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(ReplicationServer.MAGIC);
+        out.writeLong(seq);
+        out.flush();
+        return socket;
+    }
+
+    // Snapshot paths come from the network; only files in subdirectories of the staging root are accepted
+    private static Path resolve(Path staging, String name) throws IOException {
+        Path root = staging.toAbsolutePath().normalize();
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root) || target.getNameCount() < root.getNameCount() + 2) {
+            throw new IOException("snapshot file outside the data directory: " + name);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,360 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Primary side of replication. Every journal batch is streamed, once durable, to the replicas
+ * connected on a local TCP port, each through its own queue and sender thread so a slow replica
+ * only delays itself.
+ *
+ * A replica that starts empty gets a snapshot first: with writes paused the journal is folded into
+ * the shards, the shard and chat files are hard-linked into a staging directory, and the replica
+ * is registered, so it receives exactly the records after the snapshot. The files are sent after
+ * writes resume. A replica that reconnects is resumed from a backlog of recent records instead,
+ * or told to restart if it has fallen out of the backlog.
+ *
+ * Frames from the primary are a tag byte then: 'F' path, length and bytes of a snapshot file;
+ * 'S' the snapshot's sequence number; 'R' commit time and a journal record; 'H' the primary's
+ * last sequence number and clock; 'X' resume refused. Replicas answer with 'A' and the sequence
+ * number they have applied.
+ */
+class ReplicationServer {
+    static final int MAGIC = 0x53585231; // "SXR1"
+    static final byte FILE = 'F';
+    static final byte SNAPSHOT_END = 'S';
+    static final byte RECORD = 'R';
+    static final byte HEARTBEAT = 'H';
+    static final byte RESYNC = 'X';
+    static final byte ACK = 'A';
+
+    static final String[] SNAPSHOT_DIRS = {"shards", "chats"};
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    /** Writes a snapshot with all writes paused and calls back with its sequence before they resume. */
+    interface Checkpoint {
+        void run(Journal.SnapshotWriter whilePaused) throws IOException;
+    }
+
+    private static final class Stamped {
+        final Journal.Record record;
+        final long millis;
+
+        Stamped(Journal.Record record, long millis) {
+            this.record = record;
+            this.millis = millis;
+        }
+    }
+
+    private static final class StagedFile {
+        final String name;
+        final Path path;
+        final long size;
+
+        StagedFile(String name, Path path, long size) {
+            this.name = name;
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private final class Replica {
+        final Socket socket;
+        final DataOutputStream out;
+        final BlockingQueue<Stamped> queue;
+        volatile long acked;
+
+        Replica(Socket socket, long acked) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            this.queue = new LinkedBlockingQueue<>(backlogSize);
+            this.acked = acked;
+        }
+
+        // Called with the server's lock held; a replica a whole backlog behind is dropped and resumes later
+        void offer(Stamped stamped) {
+            if (!queue.offer(stamped)) {
+                System.out.println("⚠️ Replica " + socket.getRemoteSocketAddress() + " fell behind and was disconnected.");
+                close();
+            }
+        }
+
+        void send() {
+            try {
+                List<Stamped> batch = new ArrayList<>();
+                while (!socket.isClosed()) {
+                    Stamped first = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        out.writeByte(HEARTBEAT);
+                        out.writeLong(lastSeq());
+                        out.writeLong(System.currentTimeMillis());
+                    } else {
+                        batch.add(first);
+                        queue.drainTo(batch);
+                        for (Stamped stamped : batch) {
+                            out.writeByte(RECORD);
+                            out.writeLong(stamped.millis);
+                            Journal.writeRecord(out, stamped.record);
+                        }
+                        Metrics.count("replication.sent", batch.size());
+                        batch.clear();
+                    }
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // disconnected
+            } finally {
+                close();
+            }
+        }
+
+        void readAcks() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (in.readByte() == ACK) {
+                    acked = in.readLong();
+                }
+            } catch (IOException e) {
+                // disconnected
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (replicas.remove(this)) {
+                System.out.println("ℹ️ Replica " + socket.getRemoteSocketAddress() + " disconnected.");
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    private final Path dataDir;
+    private final Checkpoint checkpoint;
+    private final int backlogSize;
+    private final ArrayDeque<Stamped> backlog = new ArrayDeque<>();
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+    private final AtomicInteger snapshots = new AtomicInteger();
+    private long lastSeq;
+
+    ReplicationServer(Path dataDir, long lastSeq, int backlogSize, Checkpoint checkpoint) {
+        this.dataDir = dataDir;
+        this.lastSeq = lastSeq;
+        this.backlogSize = backlogSize;
+        this.checkpoint = checkpoint;
+        Metrics.gauge("replication.replicas", replicas::size);
+        Metrics.gauge("replication.lag.records", () -> {
+            long last = lastSeq();
+            long lag = 0;
+            for (Replica replica : replicas) {
+                lag = Math.max(lag, last - replica.acked);
+            }
+            return lag;
+        });
+    }
+
+    /** Accepts replicas on a loopback port from a background thread. */
+    void start(int port) throws IOException {
+        deleteTree(dataDir.resolve("replication"));
+        ServerSocket server = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    System.out.println("❌ Replication stopped: " + e.getMessage());
+                    return;
+                }
+                Thread handshake = new Thread(() -> connect(socket), "replica-handshake");
+                handshake.setDaemon(true);
+                handshake.start();
+            }
+        }, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("🔁 Replicas can connect on " + server.getLocalSocketAddress());
+    }
+
+    /** Journal commit listener: keeps the backlog and feeds every connected replica, in sequence order. */
+    synchronized void committed(List<Journal.Record> records) {
+        long now = System.currentTimeMillis();
+        for (Journal.Record record : records) {
+            Stamped stamped = new Stamped(record, now);
+            backlog.addLast(stamped);
+            if (backlog.size() > backlogSize) {
+                backlog.removeFirst();
+            }
+            lastSeq = record.seq;
+            for (Replica replica : replicas) {
+                replica.offer(stamped);
+            }
+        }
+    }
+
+    private synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    // The backlog holds a contiguous run of sequence numbers ending at lastSeq
+    private boolean canResume(long seq) {
+        if (seq > lastSeq) {
+            return false;
+        }
+        return seq == lastSeq || (!backlog.isEmpty() && backlog.getFirst().record.seq <= seq + 1);
+    }
+
+    private void connect(Socket socket) {
+        Replica replica = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != MAGIC) {
+                socket.close();
+                return;
+            }
+            long seq = in.readLong();
+            if (seq >= 0) {
+                replica = resume(socket, seq);
+                if (replica == null) {
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    out.writeByte(RESYNC);
+                    out.flush();
+                    socket.close();
+                    return;
+                }
+                System.out.println("ℹ️ Replica " + socket.getRemoteSocketAddress() + " resumed after record " + seq + ".");
+            } else {
+                replica = sendSnapshot(socket);
+                System.out.println("ℹ️ Replica " + socket.getRemoteSocketAddress() + " connected.");
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ Replica handshake failed: " + e.getMessage());
+            if (replica != null) {
+                replica.close();
+            }
+            return;
+        }
+        Replica connected = replica;
+        Thread sender = new Thread(connected::send, "replica-sender");
+        sender.setDaemon(true);
+        sender.start();
+        Thread acks = new Thread(connected::readAcks, "replica-acks");
+        acks.setDaemon(true);
+        acks.start();
+    }
+
+    private synchronized Replica resume(Socket socket, long seq) throws IOException {
+        if (!canResume(seq)) {
+            return null;
+        }
+        Replica replica = new Replica(socket, seq);
+        for (Stamped stamped : backlog) {
+            if (stamped.record.seq > seq) {
+                replica.queue.add(stamped);
+            }
+        }
+        replicas.add(replica);
+        return replica;
+    }
+
+    private Replica sendSnapshot(Socket socket) throws IOException {
+        Path staging = dataDir.resolve("replication").resolve("snapshot-" + snapshots.incrementAndGet());
+        List<StagedFile> files = new ArrayList<>();
+        long[] snapshotSeq = new long[1];
+        Replica replica = new Replica(socket, -1);
+        checkpoint.run(seq -> {
+            snapshotSeq[0] = seq;
+            files.addAll(stage(staging));
+            replica.acked = seq;
+            synchronized (this) {
+                replicas.add(replica);
+            }
+        });
+        try {
+            long start = System.nanoTime();
+            byte[] buffer = new byte[1 << 16];
+            for (StagedFile file : files) {
+                replica.out.writeByte(FILE);
+                replica.out.writeUTF(file.name);
+                replica.out.writeLong(file.size);
+                try (InputStream in = Files.newInputStream(file.path)) {
+                    long remaining = file.size;
+                    while (remaining > 0) {
+                        int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (n < 0) {
+                            throw new EOFException(file.name + " shrank while it was being sent");
+                        }
+                        replica.out.write(buffer, 0, n);
+                        remaining -= n;
+                    }
+                }
+                Metrics.bytesWritten("replication", file.size);
+            }
+            replica.out.writeByte(SNAPSHOT_END);
+            replica.out.writeLong(snapshotSeq[0]);
+            replica.out.flush();
+            Metrics.time("replication.snapshot", start);
+        } catch (IOException e) {
+            replica.close();
+            throw e;
+        } finally {
+            deleteTree(staging);
+        }
+        return replica;
+    }
+
+    // Runs with writes paused. Files are only replaced by rename or appended to, so a hard link
+    // and the current size pin their content; copying is the fallback where links are unsupported.
+    private List<StagedFile> stage(Path staging) throws IOException {
+        List<StagedFile> files = new ArrayList<>();
+        for (String dir : SNAPSHOT_DIRS) {
+            Path source = dataDir.resolve(dir);
+            if (!Files.isDirectory(source)) {
+                continue;
+            }
+            Path target = staging.resolve(dir);
+            Files.createDirectories(target);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+                for (Path file : entries) {
+                    String name = file.getFileName().toString();
+                    if (!Files.isRegularFile(file) || name.endsWith(".tmp")) {
+                        continue;
+                    }
+                    Path staged = target.resolve(name);
+                    try {
+                        Files.createLink(staged, file);
+                    } catch (UnsupportedOperationException | IOException e) {
+                        Files.copy(file, staged, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    files.add(new StagedFile(dir + "/" + name, staged, Files.size(file)));
+                }
+            }
+        }
+        return files;
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            List<Path> all = new ArrayList<>();
+            paths.forEach(all::add);
+            Collections.reverse(all);
+            for (Path path : all) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import java.io.PrintStream;
+import java.util.Scanner;
+
+/**
+ * Per-connection state for one person using the menus: their input, their output and who is
+ * logged in. The console is one session; server mode creates one per socket.
+ */
+class Session {
+    static final String CONSOLE = "console";
+
+    final Scanner in;
+    final PrintStream out;
+    /** Where the session comes from: {@link #CONSOLE}, or the IP address of a connection without its port. */
+    final String client;
+    String currentUser;
+
+    Session(Scanner in, PrintStream out) {
+        this(in, out, CONSOLE);
+    }
+
+    Session(Scanner in, PrintStream out, String client) {
+        this.in = in;
+        this.out = out;
+        this.client = client;
+    }
+
+    // Prompts are printed without a newline, so flush before blocking on the reply
+    String readLine() {
+        out.flush();
+        return in.nextLine();
+    }
+}
@@ -0,0 +1,34 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Unsalted SHA-256 as hex, the original scheme. Each thread reuses one digest and the hex is
+ * built from a lookup table rather than String.format per byte.
+ */
+final class Sha256PasswordHasher implements PasswordHasher {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not found", e);
+        }
+    });
+
+    @Override
+    public String hash(String password) {
+        // platform charset, as the existing users.txt hashes were produced with getBytes()
+        byte[] digest = DIGEST.get().digest(password.getBytes());
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    @Override
+    public boolean verify(String password, String stored) {
+        return MessageDigest.isEqual(hash(password).getBytes(), stored.getBytes());
+    }
+}
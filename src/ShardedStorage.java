@@ -0,0 +1,141 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the per-user data into a fixed number of shards by username hash, each shard its own
+ * {@link BinarySnapshot} file. Shards are read in parallel, and a save rewrites only the shards
+ * with a changed user, so its cost follows the size of the change rather than of the data.
+ *
+ * A small manifest records the shard count and the journal sequence the shards cover. It is
+ * replaced last, so a crash mid-save leaves some shards newer than the manifest; replaying the
+ * journal over them is harmless because records apply idempotently.
+ */
+class ShardedStorage implements Storage {
+    private static final int MAGIC = 0x53584D31; // "SXM1"
+
+    private final Path dir;
+    private final Path manifest;
+    private int shards;
+    private AtomicIntegerArray dirty;
+
+    ShardedStorage(Path dir, int shards) {
+        this.dir = dir;
+        this.manifest = dir.resolve("manifest");
+        setShards(shards);
+    }
+
+    private void setShards(int shards) {
+        this.shards = shards;
+        this.dirty = new AtomicIntegerArray(shards);
+    }
+
+    int shardOf(String user) {
+        return (user.hashCode() & 0x7fffffff) % shards;
+    }
+
+    private Path shardFile(int shard) {
+        return dir.resolve(String.format("shard-%03d.bin", shard));
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(manifest);
+    }
+
+    @Override
+    public long load(Consumer<BinarySnapshot.Data> sink) throws IOException {
+        long seq;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(manifest))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a shard manifest: " + manifest);
+            }
+            // The count the shards were written with wins over the configured one
+            setShards(in.readInt());
+            seq = in.readLong();
+        }
+        try {
+            IntStream.range(0, shards).parallel().forEach(shard -> {
+                Path file = shardFile(shard);
+                if (!Files.exists(file)) {
+                    return;
+                }
+                try {
+                    sink.accept(BinarySnapshot.read(file));
+                    Metrics.bytesRead("shards", Files.size(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return seq;
+    }
+
+    @Override
+    public void markDirty(String user) {
+        dirty.set(shardOf(user), 1);
+    }
+
+    @Override
+    public void markAllDirty() {
+        for (int i = 0; i < shards; i++) {
+            dirty.set(i, 1);
+        }
+    }
+
+    @Override
+    public void save(long seq, Collection<String> users, Exporter exporter) throws IOException {
+        BinarySnapshot.Data[] changed = new BinarySnapshot.Data[shards];
+        for (int i = 0; i < shards; i++) {
+            if (dirty.getAndSet(i, 0) == 1) {
+                changed[i] = new BinarySnapshot.Data();
+                changed[i].seq = seq;
+            }
+        }
+        for (String user : users) {
+            BinarySnapshot.Data target = changed[shardOf(user)];
+            if (target != null) {
+                exporter.export(user, target);
+            }
+        }
+        Files.createDirectories(dir);
+        try {
+            IntStream.range(0, shards).parallel().filter(i -> changed[i] != null).forEach(shard -> {
+                try {
+                    BinarySnapshot.write(shardFile(shard), changed[shard]);
+                    Metrics.bytesWritten("shards", Files.size(shardFile(shard)));
+                } catch (IOException e) {
+                    dirty.set(shard, 1);
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Every changed shard is retried on the next save; rewriting one that did make it is harmless
+            for (int i = 0; i < shards; i++) {
+                if (changed[i] != null) {
+                    dirty.set(i, 1);
+                }
+            }
+            throw e.getCause();
+        }
+        writeManifest(seq);
+    }
+
+    private void writeManifest(long seq) throws IOException {
+        Path tmp = dir.resolve("manifest.tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeInt(MAGIC);
+            out.writeInt(shards);
+            out.writeLong(seq);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
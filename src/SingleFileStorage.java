@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/** Everything in one {@link BinarySnapshot} file, rewritten whole on every save. */
+class SingleFileStorage implements Storage {
+    private final Path file;
+
+    SingleFileStorage(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    @Override
+    public long load(Consumer<BinarySnapshot.Data> sink) throws IOException {
+        BinarySnapshot.Data data = BinarySnapshot.read(file);
+        Metrics.bytesRead(file.getFileName().toString(), Files.size(file));
+        sink.accept(data);
+        return data.seq;
+    }
+
+    @Override
+    public void markDirty(String user) {
+    }
+
+    @Override
+    public void markAllDirty() {
+    }
+
+    @Override
+    public void save(long seq, Collection<String> users, Exporter exporter) throws IOException {
+        BinarySnapshot.Data data = new BinarySnapshot.Data();
+        data.seq = seq;
+        for (String user : users) {
+            exporter.export(user, data);
+        }
+        BinarySnapshot.write(file, data);
+        Metrics.bytesWritten(file.getFileName().toString(), Files.size(file));
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Running supply and demand per skill, updated as skills are added and loaded rather than
+ * computed by walking every user. Counts live in two count-min sketches, so memory is fixed
+ * however many distinct skills appear; an estimate never undercounts, and overcounts only by
+ * the other skills sharing its cells.
+ *
+ * The most demanded skills, and the most demanded among those nobody teaches, are tracked by
+ * Space-Saving summaries of a fixed number of entries. Reading the top N sorts those entries,
+ * so the cost does not grow with users or vocabulary.
+ */
+class SkillDemand {
+    static final class Entry {
+        final int skill;
+        final long demand;
+        final long supply;
+
+        Entry(int skill, long demand, long supply) {
+            this.skill = skill;
+            this.demand = demand;
+            this.supply = supply;
+        }
+    }
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F};
+
+    private static final class CountMinSketch {
+        private final int[][] cells;
+        private final int mask;
+
+        CountMinSketch(int width) {
+            int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+            cells = new int[DEPTH][size];
+            mask = size - 1;
+        }
+
+        void add(int key) {
+            for (int row = 0; row < DEPTH; row++) {
+                cells[row][index(key, row)]++;
+            }
+        }
+
+        int estimate(int key) {
+            int min = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, cells[row][index(key, row)]);
+            }
+            return min;
+        }
+
+        private int index(int key, int row) {
+            int h = key * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    // Space-Saving: a newcomer takes over the smallest counter, inheriting its count as error
+    private static final class HeavyHitters {
+        private final int capacity;
+        private final Map<Integer, long[]> counters = new HashMap<>();
+
+        HeavyHitters(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void add(int key) {
+            long[] counter = counters.get(key);
+            if (counter != null) {
+                counter[0]++;
+                return;
+            }
+            if (counters.size() < capacity) {
+                counters.put(key, new long[]{1, 0});
+                return;
+            }
+            Map.Entry<Integer, long[]> smallest = null;
+            for (Map.Entry<Integer, long[]> entry : counters.entrySet()) {
+                if (smallest == null || entry.getValue()[0] < smallest.getValue()[0]) {
+                    smallest = entry;
+                }
+            }
+            long min = smallest.getValue()[0];
+            counters.remove(smallest.getKey());
+            counters.put(key, new long[]{min + 1, min});
+        }
+
+        void remove(int key) {
+            counters.remove(key);
+        }
+
+        List<Integer> top(int n) {
+            List<Map.Entry<Integer, long[]>> entries = new ArrayList<>(counters.entrySet());
+            entries.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                    ? Long.compare(b.getValue()[0], a.getValue()[0]) : Integer.compare(a.getKey(), b.getKey()));
+            List<Integer> keys = new ArrayList<>(Math.min(n, entries.size()));
+            for (Map.Entry<Integer, long[]> entry : entries.subList(0, Math.min(n, entries.size()))) {
+                keys.add(entry.getKey());
+            }
+            return keys;
+        }
+    }
+
+    private final IntPredicate taught;
+    private final CountMinSketch supply;
+    private final CountMinSketch demand;
+    private final HeavyHitters mostDemanded;
+    private final HeavyHitters unmet;
+
+    SkillDemand(int sketchWidth, int tracked, IntPredicate taught) {
+        this.taught = taught;
+        supply = new CountMinSketch(sketchWidth);
+        demand = new CountMinSketch(sketchWidth);
+        mostDemanded = new HeavyHitters(tracked);
+        unmet = new HeavyHitters(tracked);
+    }
+
+    /** One more user teaches {@code skill}; it is no longer unmet. */
+    synchronized void supplied(int skill) {
+        supply.add(skill);
+        unmet.remove(skill);
+    }
+
+    /**
+     * One more user wants {@code skill}. Whether anybody teaches it is checked under the same lock
+     * as {@link #supplied}, so a teacher added concurrently cannot leave the skill marked unmet.
+     */
+    synchronized void demanded(int skill) {
+        demand.add(skill);
+        mostDemanded.add(skill);
+        if (!taught.test(skill)) {
+            unmet.add(skill);
+        }
+    }
+
+    synchronized List<Entry> topDemanded(int n) {
+        return entries(mostDemanded.top(n));
+    }
+
+    /** The most wanted skills that nobody teaches, most wanted first. */
+    synchronized List<Entry> topUnmet(int n) {
+        return entries(unmet.top(n));
+    }
+
+    private List<Entry> entries(List<Integer> skills) {
+        List<Entry> entries = new ArrayList<>(skills.size());
+        for (int skill : skills) {
+            entries.add(new Entry(skill, demand.estimate(skill), supply.estimate(skill)));
+        }
+        return entries;
+    }
+}
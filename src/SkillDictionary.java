@@ -0,0 +1,69 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every distinct skill name to a dense int ID, so users store small int arrays instead of
+ * their own copies of the strings. IDs are never reused or removed.
+ */
+class SkillDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    static String normalize(String skill) {
+        return skill.trim().toLowerCase();
+    }
+
+    /** Returns the ID of {@code skill}, assigning the next free one if it has not been seen. */
+    int intern(String skill) {
+        String name = normalize(skill);
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                }
+                names[size] = name;
+                id = size++;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /** Returns the ID of {@code skill}, or -1 if nobody has ever added it. */
+    int lookup(String skill) {
+        Integer id = ids.get(normalize(skill));
+        return id == null ? -1 : id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    List<String> names(SkillSet skills) {
+        List<String> result = new ArrayList<>(skills.size());
+        for (int i = 0; i < skills.size(); i++) {
+            result.add(name(skills.get(i)));
+        }
+        return result;
+    }
+
+    SkillSet toSet(Collection<String> skills) {
+        SkillSet set = SkillSet.EMPTY;
+        for (String skill : skills) {
+            if (!skill.trim().isEmpty()) {
+                set = set.with(intern(skill));
+            }
+        }
+        return set;
+    }
+}
@@ -1,127 +1,509 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class SkillExchange {
-    private static final Map<String, String> userCredentials = new HashMap<>();
-    private static final Map<String, List<String>> skillsOffered = new HashMap<>();
-    private static final Map<String, List<String>> skillsNeeded = new HashMap<>();
-    private static final Map<String, String> userEmails = new HashMap<>();
-    private static final Map<String, String> userPhones = new HashMap<>();
-    private static final Map<String, List<String>> notifications = new HashMap<>();
-    private static final Map<String, List<String>> chatMessages = new HashMap<>();
-    private static final Scanner sc = new Scanner(System.in);
-    private static String currentUser = null;
-
-    private static String hashPassword(String password) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hashedBytes = md.digest(password.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashedBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not found", e);
+    private static final Map<String, String> userCredentials = new ConcurrentHashMap<>();
+    private static final SkillDictionary skillDictionary = new SkillDictionary();
+    private static final Map<String, SkillSet> skillsOffered = new ConcurrentHashMap<>();
+    private static final Map<String, SkillSet> skillsNeeded = new ConcurrentHashMap<>();
+    private static final Map<String, String> userEmails = new ConcurrentHashMap<>();
+    private static final Map<String, String> userPhones = new ConcurrentHashMap<>();
+    private static final Map<String, NotificationInbox> notifications = new ConcurrentHashMap<>();
+    private static final AtomicLong nextNotificationId = new AtomicLong(1);
+    // Inverted index: skill ID -> users who can teach it
+    private static final Map<Integer, Set<String>> teachersBySkill = new ConcurrentHashMap<>();
+    // Skill ID -> users who want to learn it
+    private static final Map<Integer, Set<String>> learnersBySkill = new ConcurrentHashMap<>();
+    private static final SkillDemand skillDemand = new SkillDemand(
+            Integer.getInteger("skillexchange.demand.sketchWidth", 4096),
+            Integer.getInteger("skillexchange.demand.tracked", 256),
+            skill -> !teachersBySkill.getOrDefault(skill, Collections.emptySet()).isEmpty());
+    // Standing match subscriptions: skill ID -> users to alert when someone starts teaching it
+    private static final Map<Integer, Set<String>> matchSubscribers = new ConcurrentHashMap<>();
+    private static final Path DATA_DIR = Paths.get(System.getProperty("skillexchange.dataDir", "."));
+    // Single-file snapshot from before sharding; read once to migrate
+    private static final Path SNAPSHOT = DATA_DIR.resolve("snapshot.bin");
+    private static final Storage storage = new ShardedStorage(DATA_DIR.resolve("shards"),
+            Integer.getInteger("skillexchange.storage.shards", 16));
+    private static final String READ_ONLY = "❌ This is a read-only replica; make changes on the primary.";
+    private static final int COMPACT_EVERY = Integer.getInteger("skillexchange.journal.compactEvery", 1000);
+    private static final int MATCH_LIMIT = Integer.getInteger("skillexchange.match.topK", 10);
+    private static final int INBOX_SIZE = Integer.getInteger("skillexchange.notifications.max", 100);
+    private static final int CHAT_PAGE = Integer.getInteger("skillexchange.chat.pageSize", 20);
+    private static final int DEMAND_REPORT = Integer.getInteger("skillexchange.demand.report", 10);
+    private static final ChatStore chatStore = new ChatStore(DATA_DIR.resolve("chats"),
+            Integer.getInteger("skillexchange.chat.cacheMessages", 50_000),
+            Integer.getInteger("skillexchange.chat.hotMessages", 500),
+            Integer.getInteger("skillexchange.chat.blockMessages", 256));
+    private static final ChatSearchIndex chatSearch = new ChatSearchIndex(chatStore, DATA_DIR.resolve("chats"),
+            Integer.getInteger("skillexchange.chat.searchIndexes", 1000));
+    private static final MessageBus messageBus = new MessageBus(Integer.getInteger("skillexchange.chat.ringSize", 64));
+    private static final ConnectionGraph connections = new ConnectionGraph(DATA_DIR.resolve("chats").resolve("connections.bin"));
+    private static final SkillSearchIndex skillSearch = new SkillSearchIndex(skillDictionary);
+    private static final MatchEngine matchEngine = new MatchEngine(skillDictionary, skillSearch, teachersBySkill, skillsOffered, skillsNeeded);
+    private static final int CYCLE_LENGTH = Integer.getInteger("skillexchange.cycle.maxLength", 4);
+    private static final CycleFinder cycleFinder = new CycleFinder(skillDictionary, teachersBySkill, learnersBySkill,
+            skillsOffered, skillsNeeded,
+            Integer.getInteger("skillexchange.cycle.threads", Runtime.getRuntime().availableProcessors()),
+            Long.getLong("skillexchange.cycle.maxVisits", 1_000_000));
+    // Marks a data directory filled by --replica, which a replica may overwrite with a fresh snapshot
+    private static final Path REPLICA_MARKER = DATA_DIR.resolve("replica");
+    private static Journal journal;
+    // Held for the life of the process so two processes never share a data directory
+    private static FileLock dataDirLock;
+    private static final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private static final AtomicLong replicated = new AtomicLong();
+    private static volatile boolean readOnly;
+    private static final StripedLocks locks = new StripedLocks(64);
+    private static final RateLimiter loginLimit = RateLimiter.configured("login", 10, 5);
+    private static final RateLimiter accountLoginLimit = RateLimiter.configured("accountLogin", 30, 20);
+    private static final RateLimiter connectionRequestLimit = RateLimiter.configured("connectionRequests", 20, 10);
+    private static final RateLimiter chatLimit = RateLimiter.configured("chat", 60, 20);
+    private static final CredentialPool credentialPool = new CredentialPool(
+            Integer.getInteger("skillexchange.auth.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Integer.getInteger("skillexchange.auth.queue", 64));
+
+    public static void main(String[] args) {
+        if (!lockDataDir()) {
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--replica")) {
+            runReplica(args);
+            return;
+        }
+        if (!openData()) {
+            return;
         }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            startReplication();
+            startMetricsDump();
+            SkillExchangeServer.serve(args.length > 1 ? Integer.parseInt(args[1]) : SkillExchangeServer.DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 0) {
+            runCommand(args);
+            return;
+        }
+
+        startReplication();
+        mainMenu(new Session(new Scanner(System.in), System.out));
+        shutdown();
     }
 
-    public static void main(String[] args) {
-        loadUserCredentials();
-        loadSkillsOffered();
-        loadSkillsNeeded();
-        loadEmails();
-        loadPhones();
-        loadNotifications();
-        loadChatMessages();
-
-        System.out.println("🎓 Welcome to the Peer Skill Exchange System 🎓");
+    static void mainMenu(Session s) {
+        s.out.println("🎓 Welcome to the Peer Skill Exchange System 🎓");
         while (true) {
-            System.out.println("\nMAIN MENU");
-            System.out.println("1. Register");
-            System.out.println("2. Login");
-            System.out.println("3. Exit");
-            System.out.print("Enter your choice (1-3): ");
-            String choice = sc.nextLine();
+            s.out.println("\nMAIN MENU");
+            s.out.println("1. Register");
+            s.out.println("2. Login");
+            s.out.println("3. Exit");
+            s.out.print("Enter your choice (1-3): ");
+            String choice = s.readLine();
             switch (choice) {
                 case "1":
-                    register();
+                    register(s);
                     break;
                 case "2":
-                    login();
+                    login(s);
                     break;
                 case "3":
-                    saveUserCredentials();
-                    saveSkillsOffered();
-                    saveSkillsNeeded();
-                    saveEmails();
-                    savePhones();
-                    saveNotifications();
-                    saveChatMessages();
-                    System.out.println("✅ Data saved. Thank you for using Peer Skill Exchange. Goodbye!");
+                    s.out.println("✅ Data saved. Thank you for using Peer Skill Exchange. Goodbye!");
                     return;
+                case "metrics":
+                case "demand":
+                    // Not listed in the menu; for the operator at the server's console only, since
+                    // anyone can open a socket session. Servers write metrics.txt and expose JMX.
+                    if (Session.CONSOLE.equals(s.client)) {
+                        if (choice.equals("metrics")) {
+                            Metrics.dump(s.out);
+                        } else {
+                            printDemandReport(s.out, DEMAND_REPORT);
+                        }
+                        break;
+                    }
+                    s.out.println("❌ Invalid choice. Please enter 1, 2, or 3.");
+                    break;
                 default:
-                    System.out.println("❌ Invalid choice. Please enter 1, 2, or 3.");
+                    s.out.println("❌ Invalid choice. Please enter 1, 2, or 3.");
+            }
+        }
+    }
+
+    // Folds the journal into the snapshot and stops the journal writer
+    static void shutdown() {
+        if (!compact()) {
+            System.out.println("⚠️ Unsaved changes remain in journal.log and will be recovered on next start.");
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("❌ Failed to close journal.");
+        }
+    }
+
+    // Streams every committed record to read replicas when skillexchange.replication.port is set
+    private static void startReplication() {
+        Integer port = Integer.getInteger("skillexchange.replication.port");
+        if (port == null) {
+            return;
+        }
+        ReplicationServer server = new ReplicationServer(DATA_DIR, journal.lastSeq(),
+                Integer.getInteger("skillexchange.replication.backlog", 100_000), whilePaused -> {
+            stateLock.writeLock().lock();
+            try {
+                journal.checkpoint(seq -> {
+                    saveBinarySnapshot(seq);
+                    whilePaused.write(seq);
+                });
+            } finally {
+                stateLock.writeLock().unlock();
+            }
+        });
+        journal.onCommit(server::committed);
+        try {
+            server.start(port);
+        } catch (IOException e) {
+            System.out.println("❌ Failed to start replication on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    // A server has no console to type "metrics" at, so it keeps DATA_DIR/metrics.txt current instead
+    private static void startMetricsDump() {
+        int seconds = Integer.getInteger("skillexchange.metrics.dumpSeconds", 60);
+        if (seconds > 0) {
+            Metrics.dumpEvery(DATA_DIR.resolve("metrics.txt"), seconds);
+        }
+    }
+
+    // Follows a primary on this machine: the local shards and chats are replaced by its snapshot,
+    // then its changes are applied as they commit. Every change made through this process is refused.
+    private static void runReplica(String[] args) {
+        if (args.length < 2) {
+            System.out.println("❌ Usage: --replica <primary replication port> [serve port]");
+            return;
+        }
+        if (!Files.exists(REPLICA_MARKER) && (Files.exists(DATA_DIR.resolve("journal.log")) || storage.exists())) {
+            System.out.println("❌ " + DATA_DIR.toAbsolutePath().normalize() + " holds a primary's data. Give the replica its own directory with -Dskillexchange.dataDir.");
+            return;
+        }
+        try {
+            Files.write(REPLICA_MARKER, new byte[0]);
+        } catch (IOException e) {
+            System.out.println("❌ Failed to prepare the replica's data directory: " + e.getMessage());
+            return;
+        }
+        readOnly = true;
+        ReplicaClient replica = new ReplicaClient(Integer.parseInt(args[1]), DATA_DIR, SkillExchange::applyReplicated);
+        try {
+            long seq = replica.sync();
+            System.out.println("✅ Copied the primary's data up to change " + seq + ".");
+        } catch (IOException e) {
+            System.out.println("❌ Failed to copy data from the primary: " + e.getMessage());
+            return;
+        }
+        if (!openData()) {
+            return;
+        }
+        replica.start();
+        if (args.length > 2) {
+            startMetricsDump();
+            SkillExchangeServer.serve(Integer.parseInt(args[2]));
+            return;
+        }
+        mainMenu(new Session(new Scanner(System.in), System.out));
+        shutdown();
+    }
+
+    private static boolean lockDataDir() {
+        try {
+            Files.createDirectories(DATA_DIR);
+            FileChannel channel = FileChannel.open(DATA_DIR.resolve("skillexchange.lock"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            dataDirLock = channel.tryLock();
+            if (dataDirLock == null) {
+                channel.close();
+                System.out.println("❌ " + DATA_DIR.toAbsolutePath().normalize() + " is in use by another SkillExchange process.");
+                return false;
             }
+        } catch (IOException e) {
+            System.out.println("❌ Failed to lock the data directory: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    // Replicated records are not journaled here; periodic compaction persists them like local commits
+    private static void applyReplicated(Journal.Record record) {
+        stateLock.readLock().lock();
+        try {
+            apply(record);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        if (record.type == Journal.Type.CHAT_APPENDED) {
+            messageBus.publish(record.fields[0], Integer.parseInt(record.fields[1]), record.fields[2]);
+        }
+        if (replicated.incrementAndGet() % COMPACT_EVERY == 0) {
+            compact();
+        }
+    }
+
+    // Loads the binary snapshot (or the legacy text files on first run) and replays the journal over it
+    static boolean openData() {
+        registerGauges();
+        Metrics.registerMBean();
+        long snapshotSeq;
+        boolean graphSaved;
+        try {
+            chatStore.load();
+            graphSaved = connections.load();
+        } catch (IOException e) {
+            System.out.println("❌ Failed to read chat directory: " + e.getMessage());
+            return false;
+        }
+        if (storage.exists() || Files.exists(SNAPSHOT)) {
+            boolean migrating = !storage.exists();
+            try {
+                snapshotSeq = loadBinarySnapshot();
+            } catch (IOException e) {
+                System.out.println("❌ Failed to load saved data: " + e.getMessage());
+                return false;
+            }
+            if (migrating) {
+                storage.markAllDirty();
+            }
+        } else {
+            loadTextFiles();
+            snapshotSeq = loadSnapshotSeq();
+            storage.markAllDirty();
+        }
+        try {
+            journal = Journal.open(DATA_DIR.resolve("journal.log"), snapshotSeq, SkillExchange::apply);
+        } catch (IOException e) {
+            System.out.println("❌ Failed to open journal: " + e.getMessage());
+            return false;
+        }
+        if (!graphSaved) {
+            connections.importChatKeys(chatStore.conversationKeys(), userCredentials.keySet());
+        }
+        return migrateChatKeys();
+    }
+
+    // Conversations of users with '_' in their names were once stored under ambiguous keys; each is
+    // copied once to its escaped key, which is the one chatKey now looks up, and the old copy is
+    // deleted once the new one is on disk. Escaped keys never hold more than one '_', and only a
+    // migration creates them before the menus run, so an old key whose escaped key already exists
+    // is left over from a migration cut short.
+    private static boolean migrateChatKeys() {
+        for (String key : new ArrayList<>(chatStore.conversationKeys())) {
+            if (key.indexOf('_') == key.lastIndexOf('_')) {
+                continue;
+            }
+            String[] parties = ConnectionGraph.parties(key, userCredentials.keySet());
+            if (parties == null) {
+                continue;
+            }
+            String escaped = chatKey(parties[0], parties[1]);
+            if (escaped.equals(key)) {
+                continue;
+            }
+            try {
+                if (!chatStore.exists(escaped)) {
+                    importConversation(escaped, chatStore.range(key, 0, chatStore.size(key)));
+                }
+                chatStore.remove(key);
+                chatSearch.discard(key);
+            } catch (IOException e) {
+                System.out.println("❌ Failed to migrate conversation " + key + ": " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Records are applied without journaling them one by one; a single compaction persists the lot
+    private static void importUsers(Path file) {
+        BulkImporter.Result result;
+        long start = System.nanoTime();
+        try {
+            result = new BulkImporter(userCredentials::containsKey, SkillExchange::apply, System.out).importFile(file);
+        } catch (IOException e) {
+            System.out.println("❌ Failed to import " + file + ": " + e.getMessage());
+            return;
+        }
+        if (result.imported > 0 && !compact()) {
+            return;
+        }
+        System.out.println("✅ Imported " + result.imported + " users (" + result.rejected + " rejected) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    // Scripted sessions through the real menus; meant for a scratch data directory, which it fills with test users
+    private static void runLoadTest(String[] args) {
+        if (System.getProperty("skillexchange.dataDir") == null
+                && !(userCredentials.isEmpty() && chatStore.conversationKeys().isEmpty())) {
+            System.out.println("❌ The load test leaves its test users behind. Run it on an empty directory or name one with -Dskillexchange.dataDir.");
+            return;
         }
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        // Each partner sends half, which stays within the default burst of the chat limit
+        int messages = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        try {
+            LoadDriver driver = new LoadDriver(DATA_DIR, users, threads, messages);
+            driver.run(SkillExchange::mainMenu);
+            // Persist as a shutdown would, so the growth reported is what stays on disk
+            compact();
+            driver.report(System.out);
+        } catch (IOException e) {
+            System.out.println("❌ Load test failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void printDemandReport(PrintStream out, int n) {
+        List<SkillDemand.Entry> unmet = skillDemand.topUnmet(n);
+        out.println("\n📊 Most wanted skills nobody teaches yet:");
+        if (unmet.isEmpty()) {
+            out.println("Every wanted skill has at least one teacher.");
+        }
+        for (int i = 0; i < unmet.size(); i++) {
+            out.println((i+1) + ". " + skillDictionary.name(unmet.get(i).skill) + " (wanted by ~" + unmet.get(i).demand + ")");
+        }
+        out.println("\n📈 Most wanted skills overall:");
+        List<SkillDemand.Entry> demanded = skillDemand.topDemanded(n);
+        for (int i = 0; i < demanded.size(); i++) {
+            SkillDemand.Entry entry = demanded.get(i);
+            out.println((i+1) + ". " + skillDictionary.name(entry.skill) + " (wanted by ~" + entry.demand
+                    + ", taught by ~" + entry.supply + ")");
+        }
+        out.flush();
+    }
+
+    // One page of a conversation, ending skipFromEnd messages before the newest
+    static List<String> chatPage(String chatKey, int skipFromEnd) {
+        return chatStore.page(chatKey, skipFromEnd, CHAT_PAGE);
+    }
+
+    private static String chatKey(String a, String b) {
+        return ConnectionGraph.chatKey(a, b);
     }
 
-    private static void register() {
-        System.out.print("👤 Enter a new username: ");
-        String username = sc.nextLine();
+    // Converters between snapshot.bin and the users.txt / skills_*.txt / chats.txt layout, and bulk import
+    private static void runCommand(String[] args) {
+        String command = args[0];
+        switch (command) {
+            case "--import-text":
+                if (compact()) {
+                    System.out.println("✅ Text data imported into " + DATA_DIR.resolve("shards") + ".");
+                }
+                break;
+            case "--export-text":
+                boolean saved = saveTextFiles();
+                try {
+                    saveSnapshotSeq(journal.lastSeq());
+                } catch (IOException e) {
+                    saved = false;
+                }
+                System.out.println(saved ? "✅ Data exported to text files. Remove " + DATA_DIR.resolve("shards") + " to run from them."
+                        : "❌ Failed to export text files.");
+                break;
+            case "--demand-report":
+                printDemandReport(System.out, args.length > 1 ? Integer.parseInt(args[1]) : DEMAND_REPORT);
+                break;
+            case "--import-users":
+                if (args.length < 2) {
+                    System.out.println("❌ Usage: --import-users <file.csv|file.jsonl>");
+                    break;
+                }
+                importUsers(Paths.get(args[1]));
+                break;
+            case "--load-test":
+                runLoadTest(args);
+                break;
+            default:
+                System.out.println("❌ Unknown command " + command + ". Use --import-text, --export-text, --import-users, --demand-report or --load-test.");
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("❌ Failed to close journal.");
+        }
+    }
+
+    private static void register(Session s) {
+        if (readOnly) {
+            s.out.println(READ_ONLY);
+            return;
+        }
+        s.out.print("👤 Enter a new username: ");
+        String username = s.readLine();
         if (userCredentials.containsKey(username)) {
-            System.out.println("⚠️ Username already exists. Please try a different one.");
+            s.out.println("⚠️ Username already exists. Please try a different one.");
             return;
         }
 
         String password;
         while (true) {
-            System.out.print("🔑 Set a password (min 8 chars, 1 uppercase, 1 special char): ");
-            password = sc.nextLine();
+            s.out.print("🔑 Set a password (min 8 chars, 1 uppercase, 1 special char): ");
+            password = s.readLine();
             if (isPasswordValid(password)) {
                 break;
             } else {
-                System.out.println("❌ Password must be at least 8 characters long with at least one uppercase letter and one special character.");
+                s.out.println("❌ Password must be at least 8 characters long with at least one uppercase letter and one special character.");
             }
         }
 
-        String hashedPassword = hashPassword(password);
+        String hashedPassword;
+        try {
+            hashedPassword = credentialPool.hash(password);
+        } catch (RejectedExecutionException e) {
+            s.out.println("⚠️ The server is busy right now. Please try registering again in a moment.");
+            return;
+        }
         String email, phone;
         while (true) {
-            System.out.print("📧 Enter your email (must end with @gmail.com): ");
-            email = sc.nextLine();
-            if (email.endsWith("@gmail.com")) {
+            s.out.print("📧 Enter your email (must end with @gmail.com): ");
+            email = s.readLine();
+            if (isEmailValid(email)) {
                 break;
             } else {
-                System.out.println("❌ Invalid email. It must end with @gmail.com.");
+                s.out.println("❌ Invalid email. It must end with @gmail.com.");
             }
         }
         while (true) {
-            System.out.print("☎️ Enter your phone number (10 digits): ");
-            phone = sc.nextLine();
-            if (phone.matches("\\d{10}")) {
+            s.out.print("☎️ Enter your phone number (10 digits): ");
+            phone = s.readLine();
+            if (isPhoneValid(phone)) {
                 break;
             } else {
-                System.out.println("❌ Invalid phone number. It must be exactly 10 digits.");
+                s.out.println("❌ Invalid phone number. It must be exactly 10 digits.");
+            }
+        }
+        synchronized (locks.lockFor(username)) {
+            if (userCredentials.containsKey(username)) {
+                s.out.println("⚠️ Username already exists. Please try a different one.");
+                return;
+            }
+            if (commit(s, Journal.Type.USER_REGISTERED, username, hashedPassword, email, phone)) {
+                s.out.println("✅ Registration successful! You can now login.");
             }
         }
-        userCredentials.put(username, hashedPassword);
-        userEmails.put(username, email);
-        userPhones.put(username, phone);
-        skillsOffered.put(username, new ArrayList<>());
-        skillsNeeded.put(username, new ArrayList<>());
-        notifications.put(username, new ArrayList<>());
-        saveUserCredentials();
-        saveSkillsOffered();
-        saveSkillsNeeded();
-        saveEmails();
-        savePhones();
-        saveNotifications();
-        System.out.println("✅ Registration successful! You can now login.");
     }
 
-    private static boolean isPasswordValid(String password) {
+    static boolean isPasswordValid(String password) {
         if (password.length() < 8) return false;
         boolean hasUpper = false;
         boolean hasSpecial = false;
@@ -132,347 +514,1031 @@ public class SkillExchange {
         return hasUpper && hasSpecial;
     }
 
-    private static void login() {
-        System.out.print("👤 Enter your username: ");
-        String username = sc.nextLine();
-        System.out.print("🔑 Enter your password: ");
-        String password = sc.nextLine();
-        String hashedPassword = hashPassword(password);
-        if (userCredentials.containsKey(username) && userCredentials.get(username).equals(hashedPassword)) {
-            currentUser = username;
-            skillsOffered.putIfAbsent(username, new ArrayList<>());
-            skillsNeeded.putIfAbsent(username, new ArrayList<>());
-            notifications.putIfAbsent(username, new ArrayList<>());
-            System.out.println("✅ Login successful! Welcome, " + username + ".");
-            userDashboard();
+    static boolean isEmailValid(String email) {
+        return email.endsWith("@gmail.com");
+    }
+
+    static boolean isPhoneValid(String phone) {
+        return phone.matches("\\d{10}");
+    }
+
+    private static void login(Session s) {
+        s.out.print("👤 Enter your username: ");
+        String username = s.readLine();
+        s.out.print("🔑 Enter your password: ");
+        String password = s.readLine();
+        // A token is taken from the client's bucket for this account and from the account's own
+        // bucket before the password is hashed, and given back when it is right, so only failures
+        // count. The account's limit is higher: guesses spread over many addresses are capped
+        // without a single stranger being able to lock the owner out.
+        String attempts = s.client + "|" + username;
+        if (!loginLimit.tryAcquire(attempts)) {
+            s.out.println("⚠️ Too many failed login attempts. Please wait a minute and try again.");
+            return;
+        }
+        if (!accountLoginLimit.tryAcquire(username)) {
+            loginLimit.release(attempts);
+            s.out.println("⚠️ Too many failed login attempts. Please wait a minute and try again.");
+            return;
+        }
+        String storedHash = userCredentials.get(username);
+        boolean valid;
+        long start = System.nanoTime();
+        try {
+            valid = storedHash != null && credentialPool.verify(password, storedHash);
+            Metrics.time("login", start);
+        } catch (RejectedExecutionException e) {
+            loginLimit.release(attempts);
+            accountLoginLimit.release(username);
+            s.out.println("⚠️ Too many logins in progress. Please try again in a moment.");
+            return;
+        }
+        if (valid) {
+            loginLimit.release(attempts);
+            accountLoginLimit.release(username);
+            s.currentUser = username;
+            skillsOffered.putIfAbsent(username, SkillSet.EMPTY);
+            skillsNeeded.putIfAbsent(username, SkillSet.EMPTY);
+            inbox(username);
+            s.out.println("✅ Login successful! Welcome, " + username + ".");
+            userDashboard(s);
         } else {
-            System.out.println("❌ Invalid credentials. Try again.");
+            s.out.println("❌ Invalid credentials. Try again.");
         }
     }
 
-    private static void userDashboard() {
+    private static void userDashboard(Session s) {
         while (true) {
-            System.out.println("\n📋 USER DASHBOARD");
-            System.out.println("1. Add skills I can teach");
-            System.out.println("2. Add skills I want to learn");
-            System.out.println("3. View my skills");
-            System.out.println("4. Find skill matches");
-            System.out.println("5. View / Edit my profile");
-            System.out.println("6. View notifications");
-            System.out.println("7. Chat with connections");
-            System.out.println("8. Logout");
-            System.out.print("Enter your choice (1-8): ");
-            String choice = sc.nextLine();
+            s.out.println("\n📋 USER DASHBOARD");
+            s.out.println("1. Add skills I can teach");
+            s.out.println("2. Add skills I want to learn");
+            s.out.println("3. View my skills");
+            s.out.println("4. Find skill matches");
+            s.out.println("5. View / Edit my profile");
+            s.out.println("6. View notifications");
+            s.out.println("7. Chat with connections");
+            s.out.println("8. Logout");
+            s.out.println("9. Manage match alerts");
+            s.out.print("Enter your choice (1-9): ");
+            String choice = s.readLine();
             switch (choice) {
                 case "1":
-                    addSkill(skillsOffered, "teach");
-                    saveSkillsOffered();
+                    addSkill(s, "teach");
                     break;
                 case "2":
-                    addSkill(skillsNeeded, "learn");
-                    saveSkillsNeeded();
+                    addSkill(s, "learn");
                     break;
                 case "3":
-                    viewMySkills();
+                    viewMySkills(s);
                     break;
                 case "4":
-                    findMatches();
+                    findMatches(s);
                     break;
                 case "5":
-                    viewMyProfile();
+                    viewMyProfile(s);
                     break;
                 case "6":
-                    viewNotifications();
+                    viewNotifications(s);
                     break;
                 case "7":
-                    viewChat();
+                    viewChat(s);
                     break;
                 case "8":
-                    System.out.println("👋 Logged out successfully.");
-                    currentUser = null;
+                    s.out.println("👋 Logged out successfully.");
+                    s.currentUser = null;
                     return;
+                case "9":
+                    manageMatchAlerts(s);
+                    break;
                 default:
-                    System.out.println("❌ Invalid choice. Please enter 1 to 8.");
+                    s.out.println("❌ Invalid choice. Please enter 1 to 9.");
             }
         }
     }
 
-    private static void addSkill(Map<String, List<String>> skillMap, String type) {
-        System.out.print("📝 Enter a skill you can " + type + ": ");
-        String skill = sc.nextLine().toLowerCase();
-        List<String> skills = skillMap.get(currentUser);
+    private static void addSkill(Session s, String type) {
+        s.out.print("📝 Enter a skill you can " + type + ": ");
+        String skill = SkillDictionary.normalize(s.readLine());
+        if (!skill.isEmpty() && skillDictionary.lookup(skill) < 0) {
+            skill = suggestSkill(s, skill);
+        }
+        if (addSkill(s, type, skill) && type.equals("learn")
+                && teachersBySkill.getOrDefault(skillDictionary.lookup(skill), Collections.emptySet()).isEmpty()) {
+            s.out.print("🔔 Nobody teaches \"" + skill + "\" yet. Notify you when someone starts? (yes/no): ");
+            String answer = s.readLine().trim().toLowerCase();
+            if ((answer.equals("yes") || answer.equals("y"))
+                    && commit(s, Journal.Type.MATCH_SUBSCRIBED, s.currentUser, skill)) {
+                s.out.println("✅ You will be notified when someone starts teaching \"" + skill + "\".");
+            }
+        }
+    }
 
-        Map<String, List<String>> otherMap = type.equals("teach") ? skillsNeeded : skillsOffered;
-        List<String> otherSkills = otherMap.get(currentUser);
+    // The checks and the commit behind the add-skill menus once the skill name is settled; no
+    // prompts, so benchmarks can call it too. Returns whether the skill was added.
+    static boolean addSkill(Session s, String type, String skill) {
+        int id = skillDictionary.lookup(skill);
+        SkillSet skills = (type.equals("teach") ? skillsOffered : skillsNeeded).getOrDefault(s.currentUser, SkillSet.EMPTY);
 
-        if (skills.contains(skill)) {
-            System.out.println("⚠️ You already added \"" + skill + "\" in your " + (type.equals("teach") ? "teaching" : "learning") + " list.");
-        } else if (otherSkills != null && otherSkills.stream().anyMatch(s -> s.equalsIgnoreCase(skill))) {
-            System.out.println("❌ You cannot add the same skill to both offered and needed lists.");
-        } else {
-            skills.add(skill);
-            System.out.println("✅ Skill \"" + skill + "\" added successfully!");
+        Map<String, SkillSet> otherMap = type.equals("teach") ? skillsNeeded : skillsOffered;
+        SkillSet otherSkills = otherMap.getOrDefault(s.currentUser, SkillSet.EMPTY);
+
+        if (skills.contains(id)) {
+            s.out.println("⚠️ You already added \"" + skill + "\" in your " + (type.equals("teach") ? "teaching" : "learning") + " list.");
+        } else if (otherSkills.contains(id)) {
+            s.out.println("❌ You cannot add the same skill to both offered and needed lists.");
+        } else if (commit(s, Journal.Type.SKILL_ADDED, s.currentUser, type, skill)) {
+            s.out.println("✅ Skill \"" + skill + "\" added successfully!");
+            if (type.equals("teach")) {
+                postMatchAlerts(s, skill);
+            }
+            return true;
         }
+        return false;
     }
 
-    private static void viewMySkills() {
-        System.out.println("\n🧑 Your Profile:");
-        System.out.println("Skills you can teach: " + skillsOffered.get(currentUser));
-        System.out.println("Skills you want to learn: " + skillsNeeded.get(currentUser));
+    // Subscribers are looked up by skill ID, so a new teacher costs one alert per subscriber and no
+    // scan of other users. Alerts go through the async commit so the teacher does not wait for an
+    // fsync per subscriber; the next group commit makes them durable.
+    private static void postMatchAlerts(Session s, String skill) {
+        Set<String> subscribers = matchSubscribers.getOrDefault(skillDictionary.lookup(skill), Collections.emptySet());
+        int sent = 0;
+        for (String to : subscribers) {
+            if (to.equals(s.currentUser)) {
+                continue;
+            }
+            synchronized (locks.lockFor(to)) {
+                if (inbox(to).contains(s.currentUser, Notification.Kind.MATCH_ALERT, skill)) {
+                    continue;
+                }
+                if (commitAsync(s, Journal.Type.NOTIFICATION_POSTED, to, String.valueOf(nextNotificationId.getAndIncrement()),
+                        Notification.Kind.MATCH_ALERT.name(), s.currentUser, String.valueOf(System.currentTimeMillis()), skill)) {
+                    sent++;
+                }
+            }
+        }
+        Metrics.count("match.alerts", sent);
+        if (sent > 0) {
+            s.out.println("🔔 " + sent + " learner(s) waiting for \"" + skill + "\" have been notified.");
+        }
+        if (journal.size() >= COMPACT_EVERY) {
+            compact();
+        }
     }
 
-    private static void viewMyProfile() {
-        System.out.println("\n📇 Your Profile Details:");
-        System.out.println("Username: " + currentUser);
-        System.out.println("Email: " + userEmails.getOrDefault(currentUser, "N/A"));
-        System.out.println("Phone: " + userPhones.getOrDefault(currentUser, "N/A"));
-        System.out.println("Skills you can teach: " + skillsOffered.getOrDefault(currentUser, new ArrayList<>()));
-        System.out.println("Skills you want to learn: " + skillsNeeded.getOrDefault(currentUser, new ArrayList<>()));
-        System.out.print("\n✏️ Do you want to update your email or phone number? (yes/no): ");
-        String response = sc.nextLine().toLowerCase();
+    private static boolean isSubscribed(String user, int skillId) {
+        return matchSubscribers.getOrDefault(skillId, Collections.emptySet()).contains(user);
+    }
+
+    private static void manageMatchAlerts(Session s) {
+        SkillSet needed = skillsNeeded.getOrDefault(s.currentUser, SkillSet.EMPTY);
+        if (needed.isEmpty()) {
+            s.out.println("ℹ️ Add skills you want to learn first, then you can be alerted when someone teaches them.");
+            return;
+        }
+        while (true) {
+            s.out.println("\n🔔 Match alerts for skills you want to learn:");
+            for (int i = 0; i < needed.size(); i++) {
+                int id = needed.get(i);
+                s.out.println((i+1) + ". " + skillDictionary.name(id) + (isSubscribed(s.currentUser, id) ? " [on]" : " [off]"));
+            }
+            s.out.print("Enter a number to turn its alert on or off, 'all' to turn all on, or press Enter to go back: ");
+            String choice = s.readLine().trim().toLowerCase();
+            if (choice.isEmpty()) {
+                return;
+            }
+            if (choice.equals("all")) {
+                for (int i = 0; i < needed.size(); i++) {
+                    int id = needed.get(i);
+                    if (!isSubscribed(s.currentUser, id)) {
+                        commit(s, Journal.Type.MATCH_SUBSCRIBED, s.currentUser, skillDictionary.name(id));
+                    }
+                }
+                s.out.println("✅ Alerts are on for all your skills.");
+                continue;
+            }
+            try {
+                int index = Integer.parseInt(choice);
+                if (index < 1 || index > needed.size()) {
+                    s.out.println("❌ Please enter a number between 1 and " + needed.size() + ".");
+                    continue;
+                }
+                int id = needed.get(index-1);
+                String name = skillDictionary.name(id);
+                if (isSubscribed(s.currentUser, id)) {
+                    if (commit(s, Journal.Type.MATCH_UNSUBSCRIBED, s.currentUser, name)) {
+                        s.out.println("✅ Alert for \"" + name + "\" turned off.");
+                    }
+                } else if (commit(s, Journal.Type.MATCH_SUBSCRIBED, s.currentUser, name)) {
+                    s.out.println("✅ Alert for \"" + name + "\" turned on.");
+                }
+            } catch (NumberFormatException e) {
+                s.out.println("❌ Please enter a valid number.");
+            }
+        }
+    }
+
+    // Offers existing spellings of a new skill name so the same skill is not split across variants
+    private static String suggestSkill(Session s, String skill) {
+        List<String> suggestions = skillSearch.suggest(skill, 5);
+        if (suggestions.isEmpty()) {
+            return skill;
+        }
+        s.out.println("💡 Similar skills already offered:");
+        for (int i = 0; i < suggestions.size(); i++) {
+            s.out.println((i+1) + ". " + suggestions.get(i));
+        }
+        s.out.print("Enter a number to use one, or press Enter to keep \"" + skill + "\": ");
+        String choice = s.readLine().trim();
+        try {
+            int index = Integer.parseInt(choice);
+            if (index > 0 && index <= suggestions.size()) {
+                return suggestions.get(index-1);
+            }
+        } catch (NumberFormatException e) {
+            // keep what was typed
+        }
+        return skill;
+    }
+
+    private static void viewMySkills(Session s) {
+        s.out.println("\n🧑 Your Profile:");
+        s.out.println("Skills you can teach: " + skillDictionary.names(skillsOffered.getOrDefault(s.currentUser, SkillSet.EMPTY)));
+        s.out.println("Skills you want to learn: " + skillDictionary.names(skillsNeeded.getOrDefault(s.currentUser, SkillSet.EMPTY)));
+    }
+
+    private static void viewMyProfile(Session s) {
+        s.out.println("\n📇 Your Profile Details:");
+        s.out.println("Username: " + s.currentUser);
+        s.out.println("Email: " + userEmails.getOrDefault(s.currentUser, "N/A"));
+        s.out.println("Phone: " + userPhones.getOrDefault(s.currentUser, "N/A"));
+        s.out.println("Skills you can teach: " + skillDictionary.names(skillsOffered.getOrDefault(s.currentUser, SkillSet.EMPTY)));
+        s.out.println("Skills you want to learn: " + skillDictionary.names(skillsNeeded.getOrDefault(s.currentUser, SkillSet.EMPTY)));
+        s.out.print("\n✏️ Do you want to update your email or phone number? (yes/no): ");
+        String response = s.readLine().toLowerCase();
         if (response.equals("yes") || response.equals("y")) {
-            System.out.print("📧 Enter new email (or press Enter to keep current): ");
-            String newEmail = sc.nextLine();
+            String email = userEmails.getOrDefault(s.currentUser, "");
+            String phone = userPhones.getOrDefault(s.currentUser, "");
+            s.out.print("📧 Enter new email (or press Enter to keep current): ");
+            String newEmail = s.readLine();
             if (!newEmail.trim().isEmpty()) {
-                if (newEmail.endsWith("@gmail.com")) {
-                    userEmails.put(currentUser, newEmail);
+                if (isEmailValid(newEmail)) {
+                    email = newEmail;
                 } else {
-                    System.out.println("❌ Email not updated. It must end with @gmail.com.");
+                    s.out.println("❌ Email not updated. It must end with @gmail.com.");
                 }
             }
-            System.out.print("☎️ Enter new phone number (or press Enter to keep current): ");
-            String newPhone = sc.nextLine();
+            s.out.print("☎️ Enter new phone number (or press Enter to keep current): ");
+            String newPhone = s.readLine();
             if (!newPhone.trim().isEmpty()) {
-                if (newPhone.matches("\\d{10}")) {
-                    userPhones.put(currentUser, newPhone);
+                if (isPhoneValid(newPhone)) {
+                    phone = newPhone;
                 } else {
-                    System.out.println("❌ Phone number not updated. It must be exactly 10 digits.");
+                    s.out.println("❌ Phone number not updated. It must be exactly 10 digits.");
                 }
             }
-            saveEmails();
-            savePhones();
-            System.out.println("✅ Contact details updated successfully.");
+            if (commit(s, Journal.Type.CONTACT_UPDATED, s.currentUser, email, phone)) {
+                s.out.println("✅ Contact details updated successfully.");
+            }
         } else {
-            System.out.println("ℹ️ No changes made.");
+            s.out.println("ℹ️ No changes made.");
         }
     }
 
-    private static void findMatches() {
-        List<String> myNeeds = skillsNeeded.get(currentUser);
+    static void findMatches(Session s) {
+        SkillSet myNeeds = skillsNeeded.get(s.currentUser);
         if (myNeeds == null || myNeeds.isEmpty()) {
-            System.out.println("⚠️ You have not added any skills you want to learn yet.");
-            System.out.println("➡️ Please add at least one skill before finding matches.");
+            s.out.println("⚠️ You have not added any skills you want to learn yet.");
+            s.out.println("➡️ Please add at least one skill before finding matches.");
             return;
         }
-        System.out.println("\n🔍 Searching for matches...");
-        Map<Integer, String> matchIndex = new HashMap<>();
+        s.out.println("\n🔍 Searching for matches...");
+        // A pair match contacts one user; an exchange circle contacts every other member
+        Map<Integer, List<String>> matchIndex = new HashMap<>();
         int index = 1;
-        for (String otherUser : skillsOffered.keySet()) {
-            if (!otherUser.equals(currentUser)) {
-                List<String> theirSkills = skillsOffered.get(otherUser);
-                for (String need : myNeeds) {
-                    if (theirSkills.contains(need)) {
-                        System.out.println(index + ". " + otherUser + " can teach you: " + need);
-                        matchIndex.put(index, otherUser);
-                        index++;
-                        break;
+        // Timings cover the work between prompts, never the wait for the user's reply
+        long start = System.nanoTime();
+        List<MatchEngine.Match> matches = matchEngine.topMatches(s.currentUser, MATCH_LIMIT);
+        Metrics.time("findMatches", start);
+        for (MatchEngine.Match match : matches) {
+            String line = index + ". " + match.user + " can teach you: " + String.join(", ", match.canTeachYou);
+            if (!match.wantsToLearn.isEmpty()) {
+                line += " | wants to learn from you: " + String.join(", ", match.wantsToLearn);
+            }
+            s.out.println(line);
+            matchIndex.put(index, Collections.singletonList(match.user));
+            index++;
+        }
+        start = System.nanoTime();
+        List<CycleFinder.Cycle> cycles = cycleFinder.findCycles(s.currentUser, CYCLE_LENGTH, MATCH_LIMIT);
+        Metrics.time("findCycles", start);
+        if (!cycles.isEmpty()) {
+            s.out.println("\n🔄 Exchange circles (each member teaches the next):");
+            for (CycleFinder.Cycle cycle : cycles) {
+                StringBuilder line = new StringBuilder(index + ". ");
+                for (int i = 0; i < cycle.users.size(); i++) {
+                    String next = cycle.users.get((i + 1) % cycle.users.size());
+                    line.append(i == 0 ? "you" : cycle.users.get(i)).append(" → ")
+                            .append(next.equals(s.currentUser) ? "you" : next).append(" (").append(cycle.skills.get(i)).append(")");
+                    if (i < cycle.users.size() - 1) {
+                        line.append(", ");
                     }
                 }
+                s.out.println(line);
+                matchIndex.put(index, cycle.users.subList(1, cycle.users.size()));
+                index++;
             }
         }
         if (matchIndex.isEmpty()) {
-            System.out.println("❌ No matches found right now. Try again later.");
+            s.out.println("❌ No matches found right now. Try again later.");
             return;
         }
 
         while (true) {
-            System.out.print("🔗 Enter the number of the user you want to connect with (or 0 to cancel): ");
+            s.out.print("🔗 Enter the number of the user or circle you want to connect with (or 0 to cancel): ");
             try {
-                int choice = Integer.parseInt(sc.nextLine());
+                int choice = Integer.parseInt(s.readLine());
                 if (choice == 0) {
                     return;
                 } else if (matchIndex.containsKey(choice)) {
-                    String selectedUser = matchIndex.get(choice);
-                    String notification = currentUser + " wants to connect with you for skill exchange.";
-                    notifications.computeIfAbsent(selectedUser, k -> new ArrayList<>()).add(notification);
-                    saveNotifications();
-                    System.out.println("📨 Request sent to " + selectedUser + ". They will need to approve before sharing contact details.");
+                    for (String selectedUser : matchIndex.get(choice)) {
+                        if (connections.isConnected(s.currentUser, selectedUser)) {
+                            s.out.println("ℹ️ You are already connected with " + selectedUser + ". Chat with them from the chat menu.");
+                        } else if (sendConnectionRequest(s, selectedUser)) {
+                            s.out.println("📨 Request sent to " + selectedUser + ". They will need to approve before sharing contact details.");
+                        }
+                    }
                     return;
                 } else {
-                    System.out.println("❌ Invalid selection. Please enter a number between 1 and " + (index-1) + ".");
+                    s.out.println("❌ Invalid selection. Please enter a number between 1 and " + (index-1) + ".");
                 }
             } catch (NumberFormatException e) {
-                System.out.println("❌ Please enter a valid number.");
+                s.out.println("❌ Please enter a valid number.");
             }
         }
     }
 
-    private static void viewNotifications() {
-        List<String> userNotifications = notifications.getOrDefault(currentUser, new ArrayList<>());
+    private static void viewNotifications(Session s) {
+        long start = System.nanoTime();
+        List<Notification> userNotifications = inbox(s.currentUser).list();
+        Metrics.time("viewNotifications", start);
         if (userNotifications.isEmpty()) {
-            System.out.println("📭 You have no new notifications.");
+            s.out.println("📭 You have no new notifications.");
             return;
         }
 
-        System.out.println("\n📬 Your Notifications:");
+        s.out.println("\n📬 Your Notifications:");
         for (int i = 0; i < userNotifications.size(); i++) {
-            System.out.println((i+1) + ". " + userNotifications.get(i));
+            s.out.println((i+1) + ". " + userNotifications.get(i));
         }
 
         // Keep asking until we get a valid yes/no response
         String response;
         while (true) {
-            System.out.print("\nDo you want to respond to any notifications? (yes/no): ");
-            response = sc.nextLine().toLowerCase();
+            s.out.print("\nDo you want to respond to any notifications? (yes/no): ");
+            response = s.readLine().toLowerCase();
             if (response.equals("yes") || response.equals("y") ||
                     response.equals("no") || response.equals("n")) {
                 break;
             }
-            System.out.println("❌ Invalid input. Please enter 'yes' or 'no'.");
+            s.out.println("❌ Invalid input. Please enter 'yes' or 'no'.");
         }
 
         if (response.equals("yes") || response.equals("y")) {
             int choice = -1;
             while (true) {
-                System.out.print("Enter the number of the notification you want to respond to: ");
+                s.out.print("Enter the number of the notification you want to respond to: ");
                 try {
-                    choice = Integer.parseInt(sc.nextLine());
+                    choice = Integer.parseInt(s.readLine());
                     if (choice > 0 && choice <= userNotifications.size()) {
                         break;
                     } else {
-                        System.out.println("❌ Invalid notification number. Please enter a number between 1 and " + userNotifications.size() + ".");
+                        s.out.println("❌ Invalid notification number. Please enter a number between 1 and " + userNotifications.size() + ".");
                     }
                 } catch (NumberFormatException e) {
-                    System.out.println("❌ Please enter a valid number.");
+                    s.out.println("❌ Please enter a valid number.");
                 }
             }
 
-            String notification = userNotifications.get(choice-1);
-            if (notification.contains("wants to connect with you")) {
-                String requester = notification.split(" ")[0];
+            Notification notification = userNotifications.get(choice-1);
+            if (notification.kind == Notification.Kind.CONNECTION_REQUEST) {
+                String requester = notification.from;
                 // Keep asking until we get a valid yes/no response
                 String share;
                 while (true) {
-                    System.out.print("Do you want to share your contact details and open chat with " + requester + "? (yes/no): ");
-                    share = sc.nextLine().toLowerCase();
+                    s.out.print("Do you want to share your contact details and open chat with " + requester + "? (yes/no): ");
+                    share = s.readLine().toLowerCase();
                     if (share.equals("yes") || share.equals("y") ||
                             share.equals("no") || share.equals("n")) {
                         break;
                     }
-                    System.out.println("❌ Invalid input. Please enter 'yes' or 'no'.");
+                    s.out.println("❌ Invalid input. Please enter 'yes' or 'no'.");
                 }
 
                 if (share.equals("yes") || share.equals("y")) {
-                    String details = currentUser + " has shared their contact details with you:\n" +
-                            "Email: " + userEmails.get(currentUser) + "\n" +
-                            "Phone: " + userPhones.get(currentUser);
-                    notifications.computeIfAbsent(requester, k -> new ArrayList<>()).add(details);
+                    String details = "Email: " + userEmails.get(s.currentUser) + "\n" +
+                            "Phone: " + userPhones.get(s.currentUser);
+                    sendNotification(s, Notification.Kind.CONTACT_SHARED, requester, details);
 
                     // Establish chat connection
-                    String chatKey = currentUser.compareTo(requester) < 0 ?
-                            currentUser + "_" + requester : requester + "_" + currentUser;
-                    chatMessages.putIfAbsent(chatKey, new ArrayList<>());
-                    saveChatMessages();
-
-                    System.out.println("✅ Contact details shared with " + requester + ".");
-                    System.out.println("You can now chat with " + requester + " from the chat menu.");
+                    if (commit(s, Journal.Type.CONNECTION_ADDED, s.currentUser, requester)
+                            && commit(s, Journal.Type.CONVERSATION_OPENED, chatKey(s.currentUser, requester))) {
+                        s.out.println("✅ Contact details shared with " + requester + ".");
+                        s.out.println("You can now chat with " + requester + " from the chat menu.");
+                    }
                 } else {
-                    System.out.println("❌ Request declined.");
+                    s.out.println("❌ Request declined.");
+                }
+                commit(s, Journal.Type.NOTIFICATION_DISMISSED, s.currentUser, String.valueOf(notification.id));
+            } else if (notification.kind == Notification.Kind.MATCH_ALERT) {
+                String teacher = notification.from;
+                s.out.print("Send a connection request to " + teacher + "? (yes/no): ");
+                String send = s.readLine().trim().toLowerCase();
+                if (send.equals("yes") || send.equals("y")) {
+                    if (connections.isConnected(s.currentUser, teacher)) {
+                        s.out.println("ℹ️ You are already connected with " + teacher + ".");
+                    } else if (sendConnectionRequest(s, teacher)) {
+                        s.out.println("✅ Connection request sent to " + teacher + "!");
+                    }
                 }
-                userNotifications.remove(choice-1);
-                saveNotifications();
+                commit(s, Journal.Type.NOTIFICATION_DISMISSED, s.currentUser, String.valueOf(notification.id));
+            } else if (commit(s, Journal.Type.NOTIFICATION_DISMISSED, s.currentUser, String.valueOf(notification.id))) {
+                s.out.println("🗑️ Notification dismissed.");
             }
         }
     }
-    private static void viewChat() {
-        // Get all users you've connected with
-        List<String> connectedUsers = new ArrayList<>();
-        for (String user : chatMessages.keySet()) {
-            if (user.startsWith(currentUser + "_") || user.endsWith("_" + currentUser)) {
-                String otherUser = user.replace(currentUser + "_", "").replace("_" + currentUser, "");
-                connectedUsers.add(otherUser);
+
+    private static boolean sendConnectionRequest(Session s, String to) {
+        if (!connectionRequestLimit.tryAcquire(s.currentUser)) {
+            s.out.println("⚠️ You are sending connection requests too quickly. Please wait a minute before sending more.");
+            return false;
+        }
+        return sendNotification(s, Notification.Kind.CONNECTION_REQUEST, to, "");
+    }
+
+    // Duplicates are checked and the notification journaled under the recipient's stripe, so two
+    // sessions cannot both slip the same request past the check
+    private static boolean sendNotification(Session s, Notification.Kind kind, String to, String detail) {
+        synchronized (locks.lockFor(to)) {
+            if (inbox(to).contains(s.currentUser, kind, detail)) {
+                s.out.println("⚠️ " + to + " already has a pending " + (kind == Notification.Kind.CONNECTION_REQUEST
+                        ? "connection request" : "notification") + " from you.");
+                return false;
             }
+            return commit(s, Journal.Type.NOTIFICATION_POSTED, to, String.valueOf(nextNotificationId.getAndIncrement()),
+                    kind.name(), s.currentUser, String.valueOf(System.currentTimeMillis()), detail);
         }
+    }
+
+    private static NotificationInbox inbox(String user) {
+        return notifications.computeIfAbsent(user, k -> new NotificationInbox(INBOX_SIZE));
+    }
+
+    static void viewChat(Session s) {
+        long start = System.nanoTime();
+        List<String> connectedUsers = new ArrayList<>(connections.connections(s.currentUser));
+        Collections.sort(connectedUsers);
+        Metrics.time("viewChat", start);
 
         if (connectedUsers.isEmpty()) {
-            System.out.println("You have no active chat connections yet.");
+            s.out.println("You have no active chat connections yet.");
             return;
         }
 
-        System.out.println("\n💬 Your chat connections:");
+        s.out.println("\n💬 Your chat connections:");
         for (int i = 0; i < connectedUsers.size(); i++) {
-            System.out.println((i+1) + ". " + connectedUsers.get(i));
+            s.out.println((i+1) + ". " + connectedUsers.get(i));
         }
 
-        System.out.print("Select a user to chat with (or 0 to cancel): ");
+        s.out.print("Select a user to chat with, 's' to search your messages (or 0 to cancel): ");
+        String input = s.readLine().trim();
+        if (input.equalsIgnoreCase("s")) {
+            searchChats(s, connectedUsers);
+            return;
+        }
         try {
-            int choice = Integer.parseInt(sc.nextLine());
+            int choice = Integer.parseInt(input);
             if (choice > 0 && choice <= connectedUsers.size()) {
                 String selectedUser = connectedUsers.get(choice-1);
-                startChat(selectedUser);
+                startChat(s, selectedUser);
             }
         } catch (NumberFormatException e) {
-            System.out.println("❌ Please enter a valid number.");
+            s.out.println("❌ Please enter a valid number.");
         }
     }
 
-    private static void startChat(String otherUser) {
-        String chatKey = currentUser.compareTo(otherUser) < 0 ?
-                currentUser + "_" + otherUser : otherUser + "_" + currentUser;
+    private static void searchChats(Session s, List<String> connectedUsers) {
+        s.out.print("🔎 Enter words to search for: ");
+        String query = s.readLine();
+        if (ChatSearchIndex.tokenize(query).isEmpty()) {
+            s.out.println("❌ Please enter at least one word.");
+            return;
+        }
+        List<String> chatKeys = new ArrayList<>();
+        for (String other : connectedUsers) {
+            chatKeys.add(chatKey(s.currentUser, other));
+        }
+        long start = System.nanoTime();
+        List<ChatSearchIndex.Hit> hits = chatSearch.search(chatKeys, query, CHAT_PAGE);
+        Metrics.time("searchChats", start);
+        if (hits.isEmpty()) {
+            s.out.println("📭 No messages found.");
+            return;
+        }
+        String current = null;
+        for (ChatSearchIndex.Hit hit : hits) {
+            if (!hit.chatKey.equals(current)) {
+                current = hit.chatKey;
+                s.out.println("\n💬 With " + connectedUsers.get(chatKeys.indexOf(current)) + ":");
+            }
+            String[] parts = hit.message.split(":", 2);
+            s.out.println("#" + (hit.position + 1) + " " + parts[0] + ": " + (parts.length > 1 ? parts[1] : ""));
+        }
+    }
 
-        List<String> messages = chatMessages.getOrDefault(chatKey, new ArrayList<>());
+    private static void startChat(Session s, String otherUser) {
+        String chatKey = chatKey(s.currentUser, otherUser);
 
-        System.out.println("\n💬 Chat with " + otherUser + " (type 'exit' to end)");
-        for (String msg : messages) {
-            String[] parts = msg.split(":", 2);
-            System.out.println(parts[0] + ": " + parts[1]);
+        // The other side's messages are pushed in while this session waits at the prompt. The
+        // subscription starts before the history is read so nothing sent in between is missed;
+        // what arrives before the first page is printed waits behind it, and pushed messages the
+        // page already holds are dropped by position.
+        int[] pageEnd = {-1};
+        List<MessageBus.Message> early = new ArrayList<>();
+        MessageBus.Subscription live = messageBus.subscribe(chatKey, (incoming, skipped) -> {
+            if (skipped > 0) {
+                s.out.println("\n⚠️ " + skipped + " messages were skipped while you were catching up; reopen the chat to read them.");
+            }
+            synchronized (early) {
+                if (pageEnd[0] < 0) {
+                    early.addAll(incoming);
+                    return;
+                }
+            }
+            List<String> fromOther = fromOther(s, incoming, pageEnd[0]);
+            if (!fromOther.isEmpty()) {
+                s.out.println();
+                printMessages(s, fromOther);
+                s.out.print("You: ");
+                s.out.flush();
+            }
+        });
+        try {
+            // Only the latest page is loaded up front; 'more' walks further back from its start
+            long start = System.nanoTime();
+            int end = chatStore.size(chatKey);
+            List<String> messages = chatStore.range(chatKey, Math.max(0, end - CHAT_PAGE), end);
+            Metrics.time("startChat", start);
+            int oldest = end - messages.size();
+            s.out.println("\n💬 Chat with " + otherUser + " (type 'exit' to end"
+                    + (oldest > 0 ? ", 'more' for older messages)" : ")"));
+            printMessages(s, messages);
+            synchronized (early) {
+                pageEnd[0] = end;
+                printMessages(s, fromOther(s, early, end));
+                early.clear();
+            }
+            chatLoop(s, chatKey, oldest);
+        } finally {
+            live.close();
+        }
+    }
+
+    // The user's own sends are not echoed back
+    private static List<String> fromOther(Session s, List<MessageBus.Message> incoming, int from) {
+        List<String> fromOther = new ArrayList<>();
+        for (MessageBus.Message msg : incoming) {
+            if (msg.position >= from && !msg.text.startsWith(s.currentUser + ":")) {
+                fromOther.add(msg.text);
+            }
         }
+        return fromOther;
+    }
 
+    private static void chatLoop(Session s, String chatKey, int oldest) {
         while (true) {
-            System.out.print("You: ");
-            String message = sc.nextLine();
+            s.out.print("You: ");
+            String message = s.readLine();
             if (message.equalsIgnoreCase("exit")) {
                 break;
             }
-            messages.add(currentUser + ":" + message);
-            chatMessages.put(chatKey, messages);
-            saveChatMessages();
+            if (message.equalsIgnoreCase("more")) {
+                // Positions count from the first message, so live messages do not shift the pages
+                List<String> older = chatStore.range(chatKey, Math.max(0, oldest - CHAT_PAGE), oldest);
+                if (older.isEmpty()) {
+                    s.out.println("No older messages.");
+                } else {
+                    s.out.println("--- earlier messages ---");
+                    printMessages(s, older);
+                    oldest -= older.size();
+                }
+                continue;
+            }
+            if (!chatLimit.tryAcquire(s.currentUser)) {
+                s.out.println("⚠️ You are sending messages too quickly; that one was not sent.");
+                continue;
+            }
+            // Both participants may be sending at once; the position must be taken, applied and
+            // published atomically so every reader sees the same order
+            String line = s.currentUser + ":" + message;
+            synchronized (locks.lockFor(chatKey)) {
+                int position = chatStore.size(chatKey);
+                if (commitAsync(s, Journal.Type.CHAT_APPENDED, chatKey, String.valueOf(position), line)) {
+                    messageBus.publish(chatKey, position, line);
+                }
+            }
+            if (journal.size() >= COMPACT_EVERY) {
+                compact();
+            }
         }
     }
 
-    private static void loadChatMessages() {
-        try (BufferedReader br = new BufferedReader(new FileReader("chats.txt"))) {
+    private static void printMessages(Session s, List<String> messages) {
+        for (String msg : messages) {
+            String[] parts = msg.split(":", 2);
+            s.out.println(parts[0] + ": " + parts[1]);
+        }
+    }
+
+    // Journals a mutation and then applies it to the in-memory maps, the same way recovery replays it
+    private static boolean commit(Session s, Journal.Type type, String... fields) {
+        if (readOnly) {
+            s.out.println(READ_ONLY);
+            return false;
+        }
+        long start = System.nanoTime();
+        stateLock.readLock().lock();
+        try {
+            apply(journal.append(type, fields));
+            Metrics.time("commit", start);
+        } catch (IOException e) {
+            s.out.println("❌ Failed to save change: " + e.getMessage());
+            return false;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        if (journal.size() >= COMPACT_EVERY) {
+            compact();
+        }
+        return true;
+    }
+
+    // For chat: the change is applied and delivered right away and made durable by the next group
+    // commit in the background. A crash before that fsync loses the message, never reorders it.
+    private static boolean commitAsync(Session s, Journal.Type type, String... fields) {
+        if (readOnly) {
+            s.out.println(READ_ONLY);
+            return false;
+        }
+        stateLock.readLock().lock();
+        try {
+            long start = System.nanoTime();
+            journal.appendAsync(type, fields).whenComplete((seq, error) -> {
+                if (error != null) {
+                    s.out.println("\n❌ Failed to save message: " + error.getMessage());
+                } else {
+                    Metrics.time("commitAsync.durable", start);
+                }
+            });
+            apply(new Journal.Record(-1, type, fields));
+            return true;
+        } catch (IllegalStateException e) {
+            s.out.println("❌ Failed to send: " + e.getMessage());
+            return false;
+        } finally {
+            stateLock.readLock().unlock();
+        }
+    }
+
+    // Replays are idempotent so a record that already made it into the snapshot is harmless
+    static void apply(Journal.Record record) {
+        String[] f = record.fields;
+        switch (record.type) {
+            case USER_REGISTERED:
+            case SKILL_ADDED:
+            case NOTIFICATION_ADDED:
+            case NOTIFICATION_REMOVED:
+            case NOTIFICATION_POSTED:
+            case NOTIFICATION_DISMISSED:
+            case CONTACT_UPDATED:
+            case MATCH_SUBSCRIBED:
+            case MATCH_UNSUBSCRIBED:
+                // The first field of every per-user record names the user whose shard changes
+                storage.markDirty(f[0]);
+                break;
+            default:
+                break;
+        }
+        switch (record.type) {
+            case USER_REGISTERED:
+                userCredentials.put(f[0], f[1]);
+                userEmails.put(f[0], f[2]);
+                userPhones.put(f[0], f[3]);
+                skillsOffered.putIfAbsent(f[0], SkillSet.EMPTY);
+                skillsNeeded.putIfAbsent(f[0], SkillSet.EMPTY);
+                inbox(f[0]);
+                break;
+            case SKILL_ADDED:
+                int skillId = skillDictionary.intern(f[2]);
+                (f[1].equals("teach") ? skillsOffered : skillsNeeded)
+                        .merge(f[0], SkillSet.EMPTY.with(skillId), (current, added) -> current.with(skillId));
+                if (f[1].equals("teach")) {
+                    indexSkill(f[0], skillId);
+                } else {
+                    indexNeed(f[0], skillId);
+                }
+                break;
+            case NOTIFICATION_ADDED:
+                // Text notifications from journals written before typed records
+                inbox(f[0]).add(Notification.fromLegacy(nextNotificationId.getAndIncrement(), f[0], f[1]));
+                break;
+            case NOTIFICATION_REMOVED:
+                inbox(f[0]).removeLegacy(f[1]);
+                break;
+            case NOTIFICATION_POSTED:
+                long notificationId = Long.parseLong(f[1]);
+                nextNotificationId.accumulateAndGet(notificationId + 1, Math::max);
+                inbox(f[0]).add(new Notification(notificationId, Notification.Kind.valueOf(f[2]), f[3], f[0],
+                        Long.parseLong(f[4]), f[5]));
+                break;
+            case NOTIFICATION_DISMISSED:
+                inbox(f[0]).remove(Long.parseLong(f[1]));
+                break;
+            case CONVERSATION_OPENED:
+                chatStore.open(f[0]);
+                break;
+            case CHAT_APPENDED:
+                chatStore.append(f[0], Integer.parseInt(f[1]), f[2]);
+                chatSearch.appended(f[0]);
+                break;
+            case CONTACT_UPDATED:
+                userEmails.put(f[0], f[1]);
+                userPhones.put(f[0], f[2]);
+                break;
+            case CONNECTION_ADDED:
+                connections.connect(f[0], f[1]);
+                break;
+            case MATCH_SUBSCRIBED:
+                matchSubscribers.computeIfAbsent(skillDictionary.intern(f[1]), k -> ConcurrentHashMap.newKeySet()).add(f[0]);
+                break;
+            case MATCH_UNSUBSCRIBED:
+                matchSubscribers.getOrDefault(skillDictionary.lookup(f[1]), Collections.emptySet()).remove(f[0]);
+                break;
+        }
+    }
+
+    // Folds the journal back into the binary snapshot; commits are paused so the snapshot is consistent
+    private static boolean compact() {
+        stateLock.writeLock().lock();
+        try {
+            journal.checkpoint(SkillExchange::saveBinarySnapshot);
+            return true;
+        } catch (IOException e) {
+            System.out.println("❌ Failed to compact journal: " + e.getMessage());
+            return false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    static long loadBinarySnapshot() throws IOException {
+        long start = System.nanoTime();
+        long seq;
+        try {
+            seq = (storage.exists() ? storage : new SingleFileStorage(SNAPSHOT)).load(SkillExchange::restore);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Metrics.time("loadBinarySnapshot", start);
+        return seq;
+    }
+
+    // Called once per shard, from several threads at once; every target map is concurrent
+    private static void restore(BinarySnapshot.Data data) {
+        userCredentials.putAll(data.userCredentials);
+        data.skillsOffered.forEach((user, skills) -> {
+            SkillSet set = skillDictionary.toSet(skills);
+            skillsOffered.put(user, set);
+            indexSkills(user, set);
+        });
+        data.skillsNeeded.forEach((user, skills) -> {
+            SkillSet set = skillDictionary.toSet(skills);
+            skillsNeeded.put(user, set);
+            indexNeeds(user, set);
+        });
+        userEmails.putAll(data.userEmails);
+        userPhones.putAll(data.userPhones);
+        data.notifications.forEach(SkillExchange::restoreInbox);
+        data.matchSubscriptions.forEach((user, skills) -> {
+            for (String skill : skills) {
+                matchSubscribers.computeIfAbsent(skillDictionary.intern(skill), k -> ConcurrentHashMap.newKeySet()).add(user);
+            }
+        });
+        // Snapshots written before chats moved to their own files still carry them inline
+        for (Map.Entry<String, List<String>> entry : data.chatMessages.entrySet()) {
+            try {
+                importConversation(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Replaces a conversation's messages; its search index no longer matches them
+    private static void importConversation(String chatKey, List<String> messages) throws IOException {
+        chatStore.importConversation(chatKey, messages);
+        chatSearch.discard(chatKey);
+    }
+
+    static void saveBinarySnapshot(long seq) throws IOException {
+        long start = System.nanoTime();
+        chatStore.flush();
+        chatSearch.flush();
+        connections.flush();
+        Set<String> users = new HashSet<>(userCredentials.keySet());
+        users.addAll(skillsOffered.keySet());
+        users.addAll(skillsNeeded.keySet());
+        users.addAll(notifications.keySet());
+        storage.save(seq, users, SkillExchange::exportUser);
+        Metrics.time("saveBinarySnapshot", start);
+    }
+
+    private static void exportUser(String user, BinarySnapshot.Data data) {
+        putIfPresent(data.userCredentials, user, userCredentials.get(user));
+        putIfPresent(data.userEmails, user, userEmails.get(user));
+        putIfPresent(data.userPhones, user, userPhones.get(user));
+        SkillSet offered = skillsOffered.get(user);
+        if (offered != null) {
+            data.skillsOffered.put(user, skillDictionary.names(offered));
+        }
+        SkillSet needed = skillsNeeded.get(user);
+        if (needed != null) {
+            data.skillsNeeded.put(user, skillDictionary.names(needed));
+            // Only needed skills can be subscribed to, so the user's subscriptions are found among them
+            List<String> subscribed = new ArrayList<>();
+            for (int i = 0; i < needed.size(); i++) {
+                if (isSubscribed(user, needed.get(i))) {
+                    subscribed.add(skillDictionary.name(needed.get(i)));
+                }
+            }
+            if (!subscribed.isEmpty()) {
+                data.matchSubscriptions.put(user, subscribed);
+            }
+        }
+        NotificationInbox inbox = notifications.get(user);
+        if (inbox != null) {
+            data.notifications.put(user, inbox.list());
+        }
+    }
+
+    private static <V> void putIfPresent(Map<String, V> target, String key, V value) {
+        if (value != null) {
+            target.put(key, value);
+        }
+    }
+
+    // Lets benchmarks measure a full rewrite rather than an incremental one
+    static void markAllDirty() {
+        storage.markAllDirty();
+    }
+
+    // Lets benchmarks measure a load into empty maps, as at startup, rather than over loaded ones
+    static void clearLoadedData() {
+        userCredentials.clear();
+        skillsOffered.clear();
+        skillsNeeded.clear();
+        teachersBySkill.clear();
+        learnersBySkill.clear();
+        userEmails.clear();
+        userPhones.clear();
+        notifications.clear();
+        matchSubscribers.clear();
+    }
+
+    static void loadTextFiles() {
+        timedLoad("loadUserCredentials", "users.txt", SkillExchange::loadUserCredentials);
+        timedLoad("loadSkillsOffered", "skills_offered.txt", SkillExchange::loadSkillsOffered);
+        timedLoad("loadSkillsNeeded", "skills_needed.txt", SkillExchange::loadSkillsNeeded);
+        timedLoad("loadEmails", "emails.txt", SkillExchange::loadEmails);
+        timedLoad("loadPhones", "phones.txt", SkillExchange::loadPhones);
+        timedLoad("loadNotifications", "notifications.bin", SkillExchange::loadNotifications);
+        timedLoad("loadChatMessages", "chats.txt", SkillExchange::loadChatMessages);
+    }
+
+    static boolean saveTextFiles() {
+        return timedSave("saveUserCredentials", "users.txt", SkillExchange::saveUserCredentials)
+                & timedSave("saveSkillsOffered", "skills_offered.txt", SkillExchange::saveSkillsOffered)
+                & timedSave("saveSkillsNeeded", "skills_needed.txt", SkillExchange::saveSkillsNeeded)
+                & timedSave("saveEmails", "emails.txt", SkillExchange::saveEmails)
+                & timedSave("savePhones", "phones.txt", SkillExchange::savePhones)
+                & timedSave("saveNotifications", "notifications.bin", SkillExchange::saveNotifications)
+                & timedSave("saveChatMessages", "chats.txt", SkillExchange::saveChatMessages);
+    }
+
+    // Each file is read or written whole, so its size is the byte count
+    private static void timedLoad(String operation, String file, Runnable load) {
+        long start = System.nanoTime();
+        load.run();
+        Metrics.time(operation, start);
+        Metrics.bytesRead(file, dataFile(file).length());
+    }
+
+    private static boolean timedSave(String operation, String file, BooleanSupplier save) {
+        long start = System.nanoTime();
+        boolean saved = save.getAsBoolean();
+        Metrics.time(operation, start);
+        Metrics.bytesWritten(file, dataFile(file).length());
+        return saved;
+    }
+
+    private static void registerGauges() {
+        Metrics.gauge("users", userCredentials::size);
+        Metrics.gauge("skills.distinct", skillDictionary::size);
+        Metrics.gauge("skills.taught", teachersBySkill::size);
+        Metrics.gauge("notifications", () -> notifications.values().stream().mapToLong(NotificationInbox::size).sum());
+        Metrics.gauge("conversations", () -> chatStore.conversationKeys().size());
+        Metrics.gauge("chat.cache.messages", chatStore::cachedMessages);
+        Metrics.gauge("journal.records", () -> journal == null ? 0 : journal.size());
+    }
+
+    private static File dataFile(String name) {
+        return DATA_DIR.resolve(name).toFile();
+    }
+
+    private static long loadSnapshotSeq() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("snapshot.seq")))) {
+            String line = br.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void saveSnapshotSeq(long seq) throws IOException {
+        try (PrintWriter writer = new PrintWriter(dataFile("snapshot.seq"))) {
+            writer.println(seq);
+        }
+    }
+
+    static void loadChatMessages() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("chats.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":", 2);
                 if (parts.length == 2) {
-                    String[] messages = parts[1].split(";;");
-                    chatMessages.put(parts[0], new ArrayList<>(Arrays.asList(messages)));
+                    importConversation(parts[0], parts[1].isEmpty()
+                            ? Collections.<String>emptyList() : Arrays.asList(parts[1].split(";;")));
                 }
             }
-        } catch (IOException e) {
+        } catch (FileNotFoundException e) {
             System.out.println("⚠️ No existing chat data found.");
+        } catch (IOException e) {
+            System.out.println("❌ Failed to migrate chat messages: " + e.getMessage());
         }
     }
 
-    private static void saveChatMessages() {
-        try (PrintWriter writer = new PrintWriter("chats.txt")) {
-            for (Map.Entry<String, List<String>> entry : chatMessages.entrySet()) {
-                writer.println(entry.getKey() + ":" + String.join(";;", entry.getValue()));
-            }
+    static boolean saveChatMessages() {
+        try (PrintWriter writer = new PrintWriter(dataFile("chats.txt"))) {
+            chatStore.forEach((chatKey, messages) -> writer.println(chatKey + ":" + String.join(";;", messages)));
+            return !writer.checkError();
         } catch (IOException e) {
             System.out.println("❌ Failed to save chat messages.");
+            return false;
+        }
+    }
+
+    static void loadNotifications() {
+        File file = dataFile("notifications.bin");
+        if (!file.exists()) {
+            loadLegacyNotifications();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int users = in.readInt();
+            for (int i = 0; i < users; i++) {
+                String user = in.readUTF();
+                int count = in.readInt();
+                List<Notification> inbox = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    inbox.add(Notification.readFrom(in, user));
+                }
+                restoreInbox(user, inbox);
+            }
+        } catch (IOException e) {
+            System.out.println("❌ Failed to load notifications: " + e.getMessage());
         }
     }
 
-    private static void loadNotifications() {
-        try (BufferedReader br = new BufferedReader(new FileReader("notifications.txt"))) {
+    private static void loadLegacyNotifications() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("notifications.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":", 2);
                 if (parts.length == 2) {
-                    String[] notifs = parts[1].split(";;");
-                    notifications.put(parts[0], new ArrayList<>(Arrays.asList(notifs)));
+                    List<Notification> inbox = new ArrayList<>();
+                    for (String text : parts[1].split(";;")) {
+                        inbox.add(Notification.fromLegacy(nextNotificationId.getAndIncrement(), parts[0], text));
+                    }
+                    restoreInbox(parts[0], inbox);
                 }
             }
         } catch (IOException e) {
@@ -480,18 +1546,36 @@ public class SkillExchange {
         }
     }
 
-    private static void saveNotifications() {
-        try (PrintWriter writer = new PrintWriter("notifications.txt")) {
-            for (Map.Entry<String, List<String>> entry : notifications.entrySet()) {
-                writer.println(entry.getKey() + ":" + String.join(";;", entry.getValue()));
+    // Length-prefixed binary records, so contact details with line breaks survive the round trip
+    static boolean saveNotifications() {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile("notifications.bin"))))) {
+            Map<String, List<Notification>> inboxes = new HashMap<>();
+            notifications.forEach((user, inbox) -> inboxes.put(user, inbox.list()));
+            out.writeInt(inboxes.size());
+            for (Map.Entry<String, List<Notification>> entry : inboxes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Notification notification : entry.getValue()) {
+                    notification.writeTo(out);
+                }
             }
+            return true;
         } catch (IOException e) {
             System.out.println("❌ Failed to save notifications.");
+            return false;
         }
     }
 
-    private static void loadUserCredentials() {
-        try (BufferedReader br = new BufferedReader(new FileReader("users.txt"))) {
+    private static void restoreInbox(String user, List<Notification> saved) {
+        NotificationInbox inbox = inbox(user);
+        for (Notification notification : saved) {
+            inbox.add(notification);
+            nextNotificationId.accumulateAndGet(notification.id + 1, Math::max);
+        }
+    }
+
+    static void loadUserCredentials() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("users.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":");
@@ -504,24 +1588,53 @@ public class SkillExchange {
         }
     }
 
-    private static void saveUserCredentials() {
-        try (PrintWriter writer = new PrintWriter("users.txt")) {
+    static boolean saveUserCredentials() {
+        try (PrintWriter writer = new PrintWriter(dataFile("users.txt"))) {
             for (Map.Entry<String, String> entry : userCredentials.entrySet()) {
                 writer.println(entry.getKey() + ":" + entry.getValue());
             }
+            return !writer.checkError();
         } catch (IOException e) {
             System.out.println("❌ Failed to save user data.");
+            return false;
+        }
+    }
+
+    // Every way a skill reaches a user passes through here, so the demand counts see each pair once
+    private static void indexSkill(String username, int skillId) {
+        if (teachersBySkill.computeIfAbsent(skillId, k -> ConcurrentHashMap.newKeySet()).add(username)) {
+            skillDemand.supplied(skillId);
+        }
+        skillSearch.add(skillId);
+    }
+
+    private static void indexSkills(String username, SkillSet skills) {
+        for (int i = 0; i < skills.size(); i++) {
+            indexSkill(username, skills.get(i));
+        }
+    }
+
+    private static void indexNeed(String username, int skillId) {
+        if (learnersBySkill.computeIfAbsent(skillId, k -> ConcurrentHashMap.newKeySet()).add(username)) {
+            skillDemand.demanded(skillId);
+        }
+    }
+
+    private static void indexNeeds(String username, SkillSet skills) {
+        for (int i = 0; i < skills.size(); i++) {
+            indexNeed(username, skills.get(i));
         }
     }
 
-    private static void loadSkillsOffered() {
-        try (BufferedReader br = new BufferedReader(new FileReader("skills_offered.txt"))) {
+    static void loadSkillsOffered() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("skills_offered.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":");
                 if (parts.length == 2) {
-                    List<String> skills = Arrays.asList(parts[1].split(","));
-                    skillsOffered.put(parts[0], new ArrayList<>(skills));
+                    SkillSet skills = skillDictionary.toSet(Arrays.asList(parts[1].split(",")));
+                    skillsOffered.put(parts[0], skills);
+                    indexSkills(parts[0], skills);
                 }
             }
         } catch (IOException e) {
@@ -529,24 +1642,27 @@ public class SkillExchange {
         }
     }
 
-    private static void saveSkillsOffered() {
-        try (PrintWriter writer = new PrintWriter("skills_offered.txt")) {
-            for (Map.Entry<String, List<String>> entry : skillsOffered.entrySet()) {
-                writer.println(entry.getKey() + ":" + String.join(",", entry.getValue()));
+    static boolean saveSkillsOffered() {
+        try (PrintWriter writer = new PrintWriter(dataFile("skills_offered.txt"))) {
+            for (Map.Entry<String, SkillSet> entry : skillsOffered.entrySet()) {
+                writer.println(entry.getKey() + ":" + String.join(",", skillDictionary.names(entry.getValue())));
             }
+            return !writer.checkError();
         } catch (IOException e) {
             System.out.println("❌ Failed to save offered skills.");
+            return false;
         }
     }
 
-    private static void loadSkillsNeeded() {
-        try (BufferedReader br = new BufferedReader(new FileReader("skills_needed.txt"))) {
+    static void loadSkillsNeeded() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("skills_needed.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":");
                 if (parts.length == 2) {
-                    List<String> skills = Arrays.asList(parts[1].split(","));
-                    skillsNeeded.put(parts[0], new ArrayList<>(skills));
+                    SkillSet skills = skillDictionary.toSet(Arrays.asList(parts[1].split(",")));
+                    skillsNeeded.put(parts[0], skills);
+                    indexNeeds(parts[0], skills);
                 }
             }
         } catch (IOException e) {
@@ -554,18 +1670,20 @@ public class SkillExchange {
         }
     }
 
-    private static void saveSkillsNeeded() {
-        try (PrintWriter writer = new PrintWriter("skills_needed.txt")) {
-            for (Map.Entry<String, List<String>> entry : skillsNeeded.entrySet()) {
-                writer.println(entry.getKey() + ":" + String.join(",", entry.getValue()));
+    static boolean saveSkillsNeeded() {
+        try (PrintWriter writer = new PrintWriter(dataFile("skills_needed.txt"))) {
+            for (Map.Entry<String, SkillSet> entry : skillsNeeded.entrySet()) {
+                writer.println(entry.getKey() + ":" + String.join(",", skillDictionary.names(entry.getValue())));
             }
+            return !writer.checkError();
         } catch (IOException e) {
             System.out.println("❌ Failed to save needed skills.");
+            return false;
         }
     }
 
-    private static void loadEmails() {
-        try (BufferedReader br = new BufferedReader(new FileReader("emails.txt"))) {
+    static void loadEmails() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("emails.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":");
@@ -576,18 +1694,20 @@ public class SkillExchange {
         }
     }
 
-    private static void saveEmails() {
-        try (PrintWriter writer = new PrintWriter("emails.txt")) {
+    static boolean saveEmails() {
+        try (PrintWriter writer = new PrintWriter(dataFile("emails.txt"))) {
             for (Map.Entry<String, String> entry : userEmails.entrySet()) {
                 writer.println(entry.getKey() + ":" + entry.getValue());
             }
+            return !writer.checkError();
         } catch (IOException e) {
             System.out.println("❌ Failed to save email data.");
+            return false;
         }
     }
 
-    private static void loadPhones() {
-        try (BufferedReader br = new BufferedReader(new FileReader("phones.txt"))) {
+    static void loadPhones() {
+        try (BufferedReader br = new BufferedReader(new FileReader(dataFile("phones.txt")))) {
             String line;
             while ((line = br.readLine()) != null) {
                 String[] parts = line.split(":");
@@ -598,13 +1718,15 @@ public class SkillExchange {
         }
     }
 
-    private static void savePhones() {
-        try (PrintWriter writer = new PrintWriter("phones.txt")) {
+    static boolean savePhones() {
+        try (PrintWriter writer = new PrintWriter(dataFile("phones.txt"))) {
             for (Map.Entry<String, String> entry : userPhones.entrySet()) {
                 writer.println(entry.getKey() + ":" + entry.getValue());
             }
+            return !writer.checkError();
         } catch (IOException e) {
             System.out.println("❌ Failed to save phone data.");
+            return false;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the menus to many people at once over a local TCP socket. Every connection gets its own
+ * {@link Session} and runs on its own virtual thread (platform threads on JDKs without them).
+ */
+class SkillExchangeServer {
+    static final int DEFAULT_PORT = 5050;
+
+    private SkillExchangeServer() {
+    }
+
+    static void serve(int port) {
+        Runtime.getRuntime().addShutdownHook(new Thread(SkillExchange::shutdown, "shutdown"));
+        ExecutorService sessions = newSessionExecutor();
+        try (ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            System.out.println("🎓 Peer Skill Exchange server listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                sessions.execute(() -> runSession(socket));
+            }
+        } catch (IOException e) {
+            System.out.println("❌ Server stopped: " + e.getMessage());
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    private static void runSession(Socket socket) {
+        try (Socket s = socket;
+             Scanner in = new Scanner(s.getInputStream(), "UTF-8");
+             PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8")) {
+            SkillExchange.mainMenu(new Session(in, out, s.getInetAddress().getHostAddress()));
+        } catch (NoSuchElementException e) {
+            // client disconnected mid-prompt
+        } catch (IOException e) {
+            System.out.println("⚠️ Session ended: " + e.getMessage());
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() exists from JDK 21; looked up reflectively so older JDKs still build
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.*;
+
+/**
+ * Trie over the names of offered skills and the individual words in them, so "java" reaches
+ * "java programming". Supports prefix completion and bounded edit-distance lookup; the fuzzy
+ * search walks the trie one Damerau-Levenshtein row per node and abandons any branch whose row
+ * is already over the limit, so it only visits names close to the query.
+ */
+class SkillSearchIndex {
+    private static final class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        Set<Integer> skills; // skills whose name or one of its words ends here
+    }
+
+    private final SkillDictionary dictionary;
+    private final Node root = new Node();
+    private final BitSet indexed = new BitSet();
+
+    SkillSearchIndex(SkillDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    synchronized void add(int skillId) {
+        if (indexed.get(skillId)) {
+            return;
+        }
+        indexed.set(skillId);
+        String name = dictionary.name(skillId);
+        insert(name, skillId);
+        String[] words = name.split("\\s+");
+        if (words.length > 1) {
+            for (String word : words) {
+                if (!word.isEmpty()) {
+                    insert(word, skillId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Edits tolerated for a term of this length: none up to four letters, where one typo is
+     * usually another word ("java" and "lava", "perl" and "pearl").
+     */
+    static int maxEdits(String term) {
+        return term.length() <= 4 ? 0 : term.length() <= 7 ? 1 : 2;
+    }
+
+    /** Skills whose name or one of its words starts with {@code prefix}, alphabetically. */
+    synchronized List<Integer> complete(String prefix, int limit) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        Set<Integer> found = new LinkedHashSet<>();
+        if (node != null) {
+            collect(node, found, limit);
+        }
+        return new ArrayList<>(found);
+    }
+
+    /** Skills whose name or one of its words is within {@code maxEdits} edits of {@code term}, closest first. */
+    synchronized List<Integer> similar(String term, int maxEdits, int limit) {
+        Map<Integer, Integer> distances = new HashMap<>();
+        int[] first = new int[term.length() + 1];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+        for (Map.Entry<Character, Node> child : root.children.entrySet()) {
+            search(child.getValue(), child.getKey(), (char) 0, null, first, term, maxEdits, distances);
+        }
+        List<Integer> result = new ArrayList<>(distances.keySet());
+        result.sort(Comparator.comparingInt((Integer id) -> distances.get(id)).thenComparing(dictionary::name));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Skills a learner asking for {@code skillId} should also be matched with: the skill itself,
+     * skills that contain it as a word, and close misspellings.
+     */
+    List<Integer> related(int skillId, int limit) {
+        String name = dictionary.name(skillId);
+        Set<Integer> result = new LinkedHashSet<>();
+        result.add(skillId);
+        result.addAll(similar(name, maxEdits(name), limit));
+        return new ArrayList<>(result);
+    }
+
+    /** Canonical names to offer for what the user typed: completions first, then close spellings. */
+    List<String> suggest(String term, int limit) {
+        Set<Integer> ids = new LinkedHashSet<>(complete(term, limit));
+        ids.addAll(similar(term, maxEdits(term), limit));
+        List<String> names = new ArrayList<>();
+        for (int id : ids) {
+            String name = dictionary.name(id);
+            if (!name.equals(term) && names.size() < limit) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private void insert(String key, int skillId) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+        }
+        if (node.skills == null) {
+            node.skills = new LinkedHashSet<>(2);
+        }
+        node.skills.add(skillId);
+    }
+
+    private static void collect(Node node, Set<Integer> found, int limit) {
+        if (node.skills != null) {
+            for (int id : node.skills) {
+                if (found.size() >= limit) {
+                    return;
+                }
+                found.add(id);
+            }
+        }
+        for (Node child : node.children.values()) {
+            if (found.size() >= limit) {
+                return;
+            }
+            collect(child, found, limit);
+        }
+    }
+
+    // Cells reachable from later rows are never lower than this row's minimum, so it bounds the branch
+    private static void search(Node node, char ch, char prevCh, int[] prevPrev, int[] prev,
+                               String term, int maxEdits, Map<Integer, Integer> distances) {
+        int n = term.length();
+        int[] row = new int[n + 1];
+        row[0] = prev[0] + 1;
+        int min = row[0];
+        for (int i = 1; i <= n; i++) {
+            int cost = term.charAt(i - 1) == ch ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, prev[i] + 1), prev[i - 1] + cost);
+            if (prevPrev != null && i > 1 && term.charAt(i - 1) == prevCh && term.charAt(i - 2) == ch) {
+                row[i] = Math.min(row[i], prevPrev[i - 2] + 1);
+            }
+            min = Math.min(min, row[i]);
+        }
+        if (row[n] <= maxEdits && node.skills != null) {
+            for (int id : node.skills) {
+                distances.merge(id, row[n], Math::min);
+            }
+        }
+        if (min <= maxEdits) {
+            for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                search(child.getValue(), child.getKey(), ch, prev, row, term, maxEdits, distances);
+            }
+        }
+    }
+}
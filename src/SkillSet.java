@@ -0,0 +1,64 @@
+import java.util.Arrays;
+
+/**
+ * Immutable set of skill IDs kept as a sorted int array. Membership is a binary search and
+ * overlap between two users is a linear merge; updates return a new set so readers never lock.
+ */
+final class SkillSet {
+    static final SkillSet EMPTY = new SkillSet(new int[0]);
+
+    private final int[] ids;
+
+    private SkillSet(int[] ids) {
+        this.ids = ids;
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    int get(int index) {
+        return ids[index];
+    }
+
+    boolean contains(int id) {
+        return id >= 0 && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    SkillSet with(int id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) {
+            return this;
+        }
+        int insert = -pos - 1;
+        int[] grown = new int[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, insert);
+        grown[insert] = id;
+        System.arraycopy(ids, insert, grown, insert + 1, ids.length - insert);
+        return new SkillSet(grown);
+    }
+
+    /** IDs present in both sets, ascending. */
+    int[] intersect(SkillSet other) {
+        int[] a = ids;
+        int[] b = other.ids;
+        int[] common = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == common.length ? common : Arrays.copyOf(common, n);
+    }
+}
@@ -0,0 +1,31 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Where the per-user data of a snapshot lives. Chats are kept by {@link ChatStore} and are not
+ * part of it.
+ */
+interface Storage {
+    /** Fills {@code target} with everything stored about {@code user}. */
+    interface Exporter {
+        void export(String user, BinarySnapshot.Data target);
+    }
+
+    /** True once this storage has been saved at least once. */
+    boolean exists();
+
+    /**
+     * Reads everything, handing each partition to {@code sink} (possibly from several threads at
+     * once), and returns the journal sequence number the data covers.
+     */
+    long load(Consumer<BinarySnapshot.Data> sink) throws IOException;
+
+    /** Notes that data about {@code user} changed since the last save. */
+    void markDirty(String user);
+
+    void markAllDirty();
+
+    /** Writes what changed since the last save, as of journal sequence {@code seq}. */
+    void save(long seq, Collection<String> users, Exporter exporter) throws IOException;
+}
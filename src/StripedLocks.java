@@ -0,0 +1,19 @@
+/**
+ * Fixed pool of monitor objects; keys that hash to the same stripe share a lock.
+ * Lets unrelated users and conversations update concurrently without a lock per key.
+ */
+class StripedLocks {
+    private final Object[] stripes;
+
+    StripedLocks(int count) {
+        stripes = new Object[Integer.highestOneBit(Math.max(1, count - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    Object lockFor(Object key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Chats follow the application's commit path: journal first, then the store, with the store
+ * flushed by the checkpoint that drops the journal. A "crash" abandons the store unflushed.
+ */
+class ChatRecoveryTest {
+    private static final String KEY = "a_b";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void messagesSurviveCrashAfterCheckpoint() throws IOException {
+        // small hot and block sizes so the checkpoint also seals messages into the archive
+        ChatStore chats = store();
+        long[] snapshotSeq = {-1};
+        try (Journal journal = Journal.open(journalPath(), 0, record -> { })) {
+            for (int i = 0; i < 30; i++) {
+                commit(journal, chats, i);
+            }
+            journal.checkpoint(seq -> {
+                chats.flush();
+                snapshotSeq[0] = seq;
+            });
+            for (int i = 30; i < 35; i++) {
+                commit(journal, chats, i);
+            }
+        }
+
+        ChatStore recovered = recover(snapshotSeq[0]);
+        assertEquals(messages(35), recovered.range(KEY, 0, 35));
+    }
+
+    @Test
+    void replayOverFlushedChatsDoesNotDuplicate() throws IOException {
+        // the chats were flushed but the crash came before the journal was replaced
+        ChatStore chats = store();
+        try (Journal journal = Journal.open(journalPath(), 0, record -> { })) {
+            for (int i = 0; i < 12; i++) {
+                commit(journal, chats, i);
+            }
+        }
+        chats.flush();
+
+        ChatStore recovered = recover(0);
+        assertEquals(12, recovered.size(KEY));
+        assertEquals(messages(12), recovered.range(KEY, 0, 12));
+    }
+
+    private ChatStore store() {
+        return new ChatStore(dir.resolve("chats"), 1000, 8, 4);
+    }
+
+    private Path journalPath() {
+        return dir.resolve("journal.log");
+    }
+
+    private ChatStore recover(long snapshotSeq) throws IOException {
+        ChatStore chats = store();
+        chats.load();
+        Journal.open(journalPath(), snapshotSeq, record ->
+                chats.append(record.fields[0], Integer.parseInt(record.fields[1]), record.fields[2])).close();
+        return chats;
+    }
+
+    private static void commit(Journal journal, ChatStore chats, int position) throws IOException {
+        String message = "a:message " + position;
+        journal.append(Journal.Type.CHAT_APPENDED, KEY, String.valueOf(position), message);
+        assertTrue(chats.append(KEY, position, message));
+    }
+
+    private static List<String> messages(int count) {
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add("a:message " + i);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalRecoveryTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void tornTailIsCutOffAndLaterAppendsAreRecovered() throws IOException {
+        Path path = dir.resolve("journal.log");
+        appendAll(path, 0, "a", "b", "c");
+        long intact = Files.size(path);
+        // half a frame, as left by a crash in the middle of a write
+        appendBytes(path, 0, 0, 0, 40, 1, 2, 3);
+
+        List<Journal.Record> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(path, 0, replayed::add)) {
+            assertEquals(intact, Files.size(path));
+            journal.append(Journal.Type.CHAT_APPENDED, "k", "3", "d");
+        }
+        assertEquals(3, replayed.size());
+
+        List<Journal.Record> recovered = replay(path, 0);
+        assertEquals(4, recovered.size());
+        assertEquals("d", recovered.get(3).fields[2]);
+        assertEquals(4, recovered.get(3).seq);
+    }
+
+    @Test
+    void replayStopsAtDamagedRecord() throws IOException {
+        Path path = dir.resolve("journal.log");
+        appendAll(path, 0, "a", "b", "c");
+        // flip a payload byte of the last record so its checksum no longer matches
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            last.rewind();
+            channel.write(last, channel.size() - 1);
+        }
+
+        List<Journal.Record> recovered = replay(path, 0);
+        assertEquals(2, recovered.size());
+        assertEquals("b", recovered.get(1).fields[2]);
+    }
+
+    @Test
+    void checkpointReplaysOnlyLaterRecords() throws IOException {
+        Path path = dir.resolve("journal.log");
+        long[] snapshotSeq = {-1};
+        try (Journal journal = Journal.open(path, 0, record -> { })) {
+            journal.append(Journal.Type.CHAT_APPENDED, "k", "0", "a");
+            journal.append(Journal.Type.CHAT_APPENDED, "k", "1", "b");
+            journal.checkpoint(seq -> snapshotSeq[0] = seq);
+            assertEquals(0, journal.size());
+            journal.append(Journal.Type.CHAT_APPENDED, "k", "2", "c");
+        }
+        assertEquals(2, snapshotSeq[0]);
+
+        List<Journal.Record> recovered = replay(path, snapshotSeq[0]);
+        assertEquals(1, recovered.size());
+        assertEquals(3, recovered.get(0).seq);
+        assertEquals("c", recovered.get(0).fields[2]);
+    }
+
+    @Test
+    void failedSnapshotKeepsJournal() throws IOException {
+        Path path = dir.resolve("journal.log");
+        try (Journal journal = Journal.open(path, 0, record -> { })) {
+            journal.append(Journal.Type.CHAT_APPENDED, "k", "0", "a");
+            assertThrows(IOException.class, () -> journal.checkpoint(seq -> {
+                throw new IOException("disk full");
+            }));
+            assertEquals(1, journal.size());
+        }
+        assertEquals(1, replay(path, 0).size());
+    }
+
+    private static void appendAll(Path path, int first, String... messages) throws IOException {
+        try (Journal journal = Journal.open(path, 0, record -> { })) {
+            for (int i = 0; i < messages.length; i++) {
+                journal.append(Journal.Type.CHAT_APPENDED, "k", String.valueOf(first + i), messages[i]);
+            }
+        }
+    }
+
+    private static List<Journal.Record> replay(Path path, long snapshotSeq) throws IOException {
+        List<Journal.Record> records = new ArrayList<>();
+        Journal.open(path, snapshotSeq, records::add).close();
+        return records;
+    }
+
+    private static void appendBytes(Path path, int... bytes) throws IOException {
+        byte[] raw = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            raw[i] = (byte) bytes[i];
+        }
+        Files.write(path, raw, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedStorageTest {
+    @TempDir
+    Path dir;
+
+    private ShardedStorage storage;
+    private final Map<String, String> passwords = new TreeMap<>();
+    private String first;
+    private String second;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new ShardedStorage(dir, 2);
+        first = userInShard(0);
+        second = userInShard(1);
+        passwords.put(first, "old");
+        passwords.put(second, "old");
+        storage.markAllDirty();
+        save(1);
+    }
+
+    @Test
+    void manifestIsNotAdvancedWhenShardWriteFails() throws IOException {
+        passwords.put(first, "new");
+        passwords.put(second, "new");
+        storage.markDirty(first);
+        storage.markDirty(second);
+        Path blocker = block(dir.resolve("shard-000.bin.tmp"));
+        assertThrows(IOException.class, () -> save(2));
+
+        // the shard that was written is ahead of the manifest; the journal from 1 covers both
+        Map<String, String> loaded = new TreeMap<>();
+        assertEquals(1, load(loaded));
+        assertEquals("old", loaded.get(first));
+        assertEquals("new", loaded.get(second));
+
+        // the failed shard is still dirty, so the next save completes the change
+        unblock(blocker);
+        save(3);
+        loaded.clear();
+        assertEquals(3, load(loaded));
+        assertEquals("new", loaded.get(first));
+        assertEquals("new", loaded.get(second));
+    }
+
+    @Test
+    void manifestIsReplacedAfterShards() throws IOException {
+        passwords.put(first, "new");
+        storage.markDirty(first);
+        Path blocker = block(dir.resolve("manifest.tmp"));
+        assertThrows(IOException.class, () -> save(2));
+
+        Map<String, String> loaded = new TreeMap<>();
+        assertEquals(1, load(loaded));
+        assertEquals("new", loaded.get(first));
+
+        unblock(blocker);
+        save(3);
+        loaded.clear();
+        assertEquals(3, load(loaded));
+        assertEquals("new", loaded.get(first));
+    }
+
+    private void save(long seq) throws IOException {
+        storage.save(seq, passwords.keySet(), (user, target) -> target.userCredentials.put(user, passwords.get(user)));
+    }
+
+    // Reads through a fresh instance, as a restart would
+    private long load(Map<String, String> loaded) throws IOException {
+        return new ShardedStorage(dir, 2).load(data -> {
+            synchronized (loaded) {
+                loaded.putAll(data.userCredentials);
+            }
+        });
+    }
+
+    private String userInShard(int shard) {
+        for (int i = 0; ; i++) {
+            if (storage.shardOf("user" + i) == shard) {
+                return "user" + i;
+            }
+        }
+    }
+
+    // A non-empty directory where a file is about to be written makes that write fail
+    private static Path block(Path path) throws IOException {
+        Files.createDirectories(path);
+        return Files.write(path.resolve("blocker"), new byte[0]);
+    }
+
+    private static void unblock(Path blocker) throws IOException {
+        Files.delete(blocker);
+        Files.delete(blocker.getParent());
+    }
+}